@@ -23,64 +23,156 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 
 
 /**
- *   Implements an inverted index as a Hashtable from words to PostingsLists.
+ *   Implements an inverted index as a hash map from pairs of termIDs to
+ *   PostingsLists. The termIDs are given by a TermDictionary, which can
+ *   be shared with other indexes.
  */
 public class BiwordIndex implements Index {
 
-    /** The index as a hashtable. */
-    private HashMap<String, HashMap<String, PostingsList>> index = new 
-    		HashMap<String, HashMap<String, PostingsList>> ();
-    private String previousTokenName = null;
+    /** The dictionary giving the termIDs. */
+    protected TermDictionary terms;
+
+    /** The paths and lengths of the documents. */
+    protected DocumentStore documents;
+
+    /** The index as a hash map, keyed by HashedIndex.key(foo, bar). */
+    private LongMap<PostingsList> index = new LongMap<PostingsList>();
+    private int previousTermID = -1;
     private int previousDocID = -1;
     
     /** store the number of documents. */
-    private int numDocuments;
+    protected int numDocuments;
     /** store the number of bigrams. */
-    private int numBigrams;
+    protected int numBigrams;
+    
+    /** The estimated heap bytes of the postings, see estimateMemory(). */
+    private long memory = 0;
+    
+    /** The score accumulator of each searching thread, see HashedIndex. */
+    private ThreadLocal<ScoreAccumulator> accumulators = new ThreadLocal<ScoreAccumulator>() {
+    	protected ScoreAccumulator initialValue() {
+    		return new ScoreAccumulator(numDocuments);
+    	}
+    };
+    
+    /**
+     *  The Euclidean length of the bigram tf-idf vector of each docID,
+     *  or null if it has to be computed, see getNorms().
+     */
+    private float[] norms = null;
+    
+    /**
+     *  Creates an index with its own dictionary and documents.
+     */
+    public BiwordIndex() {
+    	this(new TermDictionary());
+    }
+    
+    /**
+     *  Creates an index taking the termIDs from terms.
+     */
+    public BiwordIndex(TermDictionary terms) {
+    	this(terms, new DocumentStore());
+    }
+    
+    /**
+     *  Creates an index taking the termIDs from terms, with the given
+     *  documents, which can be shared with other indexes.
+     */
+    public BiwordIndex(TermDictionary terms, DocumentStore documents) {
+    	this.terms = terms;
+    	this.documents = documents;
+    }
+    
+    public DocumentStore getDocuments() {
+    	return documents;
+    }
 
     /**
      *  Inserts this token in the index.
      */
     public void insert(String token, int docID, int offset) {
+    	insert(terms.add(token), docID, offset);
+    }
+    
+    /**
+     *  Inserts the term termID in the index, as the second word of a
+     *  bigram with the term inserted before it.
+     */
+    public void insert(int termID, int docID, int offset) {
     	if (previousDocID != docID) {
-    		previousTokenName = null;
+    		previousTermID = -1;
     		previousDocID = docID;
     	} // for first word in the document.
     	
-    	if (previousTokenName == null) {
-    		previousTokenName = token;
+    	if (previousTermID < 0) {
+    		previousTermID = termID;
     		return;
     	} // first word does not participate in the game.
     	
-    	if (!index.containsKey(previousTokenName)) {
-    		HashMap<String, PostingsList> map = new HashMap<String, PostingsList>();
-    		index.put(previousTokenName, map);
-    	} // create a hashmap to store the previous token.
-    	
-    	HashMap<String, PostingsList> map = index.get(previousTokenName);
-    	if (!map.containsKey(token)) {
-    		map.put(token, new PostingsList());
+    	long key = HashedIndex.key(previousTermID, termID);
+    	PostingsList list = index.get(key);
+    	if (list == null) {
+    		list = new PostingsList();
+    		index.put(key, list);
     		numBigrams++;
+    		memory += HashedIndex.TERM_BYTES;
     		// create a new hashmap.
     	}
-    	map.get(token).insert(docID, offset, 1.0);
+    	int size = list.size();
+    	list.insert(docID, offset, 1.0);
+    	norms = null;
+    	memory += list.size() > size ? 
+    			HashedIndex.POSTING_BYTES + HashedIndex.POSITION_BYTES : HashedIndex.POSITION_BYTES;
     	
-    	previousTokenName = token;
+    	previousTermID = termID;
+    }
+    
+    /**
+     *  Appends the postings of partial, whose docIDs all come after the
+     *  docIDs in this index. The PostingsLists of partial are taken over.
+     */
+    public void merge(BiwordIndex partial) {
+    	if (partial.terms != terms) {
+    		throw new IllegalArgumentException("The indexes have different dictionaries");
+    	}
+    	for (long key : partial.index.keys()) {
+    		PostingsList list = index.get(key);
+    		if (list == null) {
+    			index.put(key, partial.index.get(key));
+    			numBigrams++;
+    		} else {
+    			list.append(partial.index.get(key));
+    		}
+    	}
+    	memory += partial.memory;
+    	norms = null;
+    }
+    
+    /**
+     *  Returns the estimated heap bytes taken by the postings, used for
+     *  deciding when to flush the index to disk.
+     */
+    public long estimateMemory() {
+    	return memory;
     }
 
 
     /**
-     *  Returns all the words in the index.
+     *  Returns all the bigrams in the index, as "foo bar".
      */
     public Iterator<String> getDictionary() {
-		return index.keySet().iterator();
+    	return getBigrams().iterator();
     }
 
     /**
@@ -88,13 +180,24 @@ public class BiwordIndex implements Index {
      *  if the term is not in the index.
      */
     public PostingsList getPostings (String foo, String bar) {
-    	if (!index.containsKey(foo)) {
+    	int termFoo = terms.lookup(foo);
+    	int termBar = terms.lookup(bar);
+    	if (termFoo < 0 || termBar < 0) {
     		return null;
     	} else {
-    		return index.get(foo).get(bar);
+    		return index.get(HashedIndex.key(termFoo, termBar));
     	}
     }
     
+    /**
+     *  Returns a cursor over the postings of a bigram, or null if the
+     *  bigram is not in the index.
+     */
+    protected PostingsCursor getCursor (String foo, String bar) {
+    	PostingsList list = getPostings(foo, bar);
+    	return list == null ? null : list.cursor();
+    }
+    
     public PostingsList getPostings (String token) {
     	return null;
     } // a deprecated method.
@@ -103,45 +206,62 @@ public class BiwordIndex implements Index {
      *  Searches the index for postings matching the query.
      */
     public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return search(query, queryType, rankingType, structureType, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  Searches the index for postings matching the query. A ranked
+     *  query returns only the k best documents, best first.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
 		PostingsList list = new PostingsList();
 		long startTime = System.nanoTime(); // the start time
 		// initialize a list.
 		if (queryType == Index.RANKED_QUERY) {
+			ScoreAccumulator scores = accumulators.get();
+			scores.reset();
+			// the summed score of each matching document.
+			float[] norms = getNorms();
 			double idf = 0.0;
 			String foo = null; // foo -> bar -> list, the naming rule.
 			String bar = null;
+			double weightFoo = 0.0;
 			
 			for (int i = 0; i < query.terms.size(); i++) {
 				bar = query.terms.get(i);
+				double weightBar = query.weights.get(i);
 				if (foo == null) {
 					foo = bar;
+					weightFoo = weightBar;
 					continue;
 				} // the first token does not participate in the game.
 				
-				PostingsList listFoo = this.getPostings(foo, bar);
-				PostingsList listBar = new PostingsList();
-				listBar.append(listFoo);
-				// copy w/protecting original data.
-				listBar.removeDuplicate(rankingType);
-				HashMap<Integer, Double> scores = new HashMap<Integer, Double>();
-				// this arrayList stores the tf_idf scores of the specified token.
+				PostingsCursor entry = this.getCursor(foo, bar);
+				double weight = (weightFoo + weightBar) / 2;
+				// the bigram weighs as much as its two tokens on average.
+				foo = bar;
+				weightFoo = weightBar;
+				// the next bigram starts with this token.
+				if (entry == null) {
+					continue;
+				}
 				
 				if (rankingType != Index.PAGERANK) {
-					idf = Math.log((double)numBigrams / (double)listBar.size());
+					idf = Math.log((double)numDocuments / (double)entry.size());
 					// calcualte the idf.
-					for (int j = 0; j < listBar.size(); j++) {
-						PostingsEntry entry = listBar.get(j);
-						entry.score = idf * (1 + Math.log(entry.score)) / 
-								Integer.valueOf(docLengths.get(new Integer(entry.docID).toString()));
-						// the tf_idf score (normalized).
-						scores.put(entry.docID, entry.score);
-					} // for
-				} // if
-				
-				list.expand(listBar, 0);
+				}
+				while (entry.next()) {
+					if (rankingType != Index.PAGERANK) {
+						scores.add(entry.docID(), weight * idf * idf * HashedIndex.tfScore(entry.tf(), entry.docID(), norms));
+						// the tf_idf score (cosine normalized).
+					} else {
+						scores.add(entry.docID(), 1.0);
+					}
+				} // while
 			} // for
 			
-			list.sort();
+			list = scores.topK(k);
+			// only the k best are sorted.
 		}
 		System.out.println("Elapsed time: " + (System.nanoTime() - startTime) + " nanosecond(s)");
 		return list;
@@ -155,6 +275,21 @@ public class BiwordIndex implements Index {
     public int getNumDocuments() {
     	return numDocuments;
     }
+    
+    /**
+     *  Returns the norms of the documents, computing them if the index
+     *  has changed since they were last computed.
+     */
+    protected float[] getNorms() {
+    	if (norms == null) {
+    		double[] sums = new double[numDocuments];
+    		for (long key : index.keys()) {
+    			sums = HashedIndex.addSquaredWeights(sums, index.get(key), numDocuments);
+    		}
+    		norms = HashedIndex.norms(sums);
+    	}
+    	return norms;
+    }
 
     /**
      *  No need for cleanup in a HashedIndex.
@@ -162,9 +297,60 @@ public class BiwordIndex implements Index {
      */
     public void cleanup() {
     	index.clear();
+    	previousTermID = -1;
+    	previousDocID = -1;
+    	memory = 0;
+    	norms = null;
     }
     
     public double getTfIdfScore(String foo, int bar) { return 0.0; }
-    public void writeFile() { }
+    
+    public void writeFile() {
+    	try {
+    		writeFile(new File(DiskIndex.INDEX_DIR, DiskBiwordIndex.BIWORD_DIR));
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+    
+    /**
+     *  Writes the index to dir, where it can be opened by a
+     *  DiskBiwordIndex. A bigram is stored as the term "foo bar".
+     */
+    public void writeFile(File dir) throws IOException {
+    	final long[] keys = index.keys();
+    	final String[] bigrams = new String[keys.length];
+    	Integer[] sorted = new Integer[keys.length];
+    	for (int i = 0; i < keys.length; i++) {
+    		bigrams[i] = bigram(keys[i]);
+    		sorted[i] = i;
+    	}
+    	Arrays.sort(sorted, new Comparator<Integer>() {
+    		public int compare(Integer foo, Integer bar) {
+    			return bigrams[foo].compareTo(bigrams[bar]);
+    		}
+    	});
+    	// the dictionary is written in sorted order.
+    	DiskIndex.Writer writer = new DiskIndex.Writer(dir, numDocuments);
+    	for (int i : sorted) {
+    		writer.add(bigrams[i], index.get(keys[i]));
+    	}
+    	writer.close();
+    }
+    
+    private ArrayList<String> getBigrams() {
+    	ArrayList<String> bigrams = new ArrayList<String>();
+    	for (long key : index.keys()) {
+    		bigrams.add(bigram(key));
+    	}
+    	return bigrams;
+    }
+    
+    /**
+     *  Returns the bigram of key as "foo bar".
+     */
+    private String bigram(long key) {
+    	return terms.getTerm((int) (key >>> 32)) + " " + terms.getTerm((int) key);
+    }
     
 }
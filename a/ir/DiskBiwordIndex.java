@@ -0,0 +1,93 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the biword index read from disk.
+ * the bigram "foo bar" is stored as one term of a disk index.
+ */
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+
+/**
+ *   Implements a biword index whose postings are read from a DiskIndex.
+ */
+public class DiskBiwordIndex extends BiwordIndex {
+
+    /** The directory of the biword index, inside the index directory. */
+    public static final String BIWORD_DIR = "biword";
+
+    /** The bigrams, stored as "foo bar". */
+    private DiskIndex bigrams;
+
+    /**
+     *  Opens the biword index written to dir by BiwordIndex.writeFile(),
+     *  with the documents of the index it belongs to.
+     */
+    public DiskBiwordIndex(File dir, DocumentStore documents) throws IOException {
+    	super(new TermDictionary(), documents);
+    	bigrams = new DiskIndex(dir);
+    	numBigrams = bigrams.getNumTerms();
+    	numDocuments = bigrams.getNumDocuments();
+    }
+
+    /**
+     *  The index is read-only.
+     */
+    public void insert(String token, int docID, int offset) {
+    	throw new UnsupportedOperationException("DiskBiwordIndex is read-only");
+    }
+
+    public void insert(int termID, int docID, int offset) {
+    	throw new UnsupportedOperationException("DiskBiwordIndex is read-only");
+    }
+
+    /**
+     *  Returns all the bigrams in the index, as "foo bar".
+     */
+    public Iterator<String> getDictionary() {
+    	return bigrams.getDictionary();
+    }
+
+    /**
+     *  Returns the postings for a specific bigram, or null
+     *  if the bigram is not in the index.
+     */
+    public PostingsList getPostings (String foo, String bar) {
+    	return bigrams.getPostings(foo + " " + bar);
+    }
+
+    /**
+     *  Returns a cursor over the postings of a bigram in the mapped
+     *  file, or null if the bigram is not in the index.
+     */
+    protected PostingsCursor getCursor (String foo, String bar) {
+    	return bigrams.getCursor(bigrams.getTermID(foo + " " + bar));
+    }
+
+    /**
+     *  Returns the norms stored with the bigrams.
+     */
+    protected float[] getNorms() {
+    	return bigrams.getNorms();
+    }
+
+    /**
+     *  The index is already on disk.
+     */
+    public void writeFile() { }
+
+    public void cleanup() {
+    	bigrams.cleanup();
+    }
+
+}
@@ -0,0 +1,566 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the disk index (task 1.6).
+ * the search is inherited from the hashedIndex, only the postings
+ * are read from disk.
+ */
+
+package ir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+
+/**
+ *   Implements an inverted index stored in two files: a dictionary
+ *   with the terms in sorted order, and the block-compressed postings
+ *   of all the terms (see PostingsCodec).
+ *
+ *   Both files are memory-mapped, so opening the index reads nothing:
+ *   the dictionary is binary searched in place, and the search reads
+ *   the postings straight from the mapped file through a cursor (see
+ *   getCursor()), which skips the blocks it does not need and decodes
+ *   the positions only for the phrase and proximity queries. The pages
+ *   of the terms in use are kept by the OS page cache instead of the
+ *   Java heap.
+ */
+public class DiskIndex extends HashedIndex {
+
+    /** The directory where the index is written by default. */
+    public static final String INDEX_DIR = "./index";
+
+    /** The name of the dictionary file in the index directory. */
+    public static final String DICTIONARY_FILE = "dictionary";
+
+    /** The name of the postings file in the index directory. */
+    public static final String POSTINGS_FILE = "postings";
+
+    /** The name of the file with the norms of the documents, as floats. */
+    public static final String NORMS_FILE = "norms";
+
+    /**
+     *  The champion tiers are written as indexes in the subdirectories
+     *  TIER_DIR + tier, see HashedIndex.CHAMPION_TIERS.
+     */
+    public static final String TIER_DIR = "tier";
+
+    /** Identifies the dictionary file format, changed with the format. */
+    private static final int MAGIC = 0x49524433;
+
+    /** The size of the dictionary header: magic, numDocuments, numTerms. */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     *  The size of a dictionary entry: the start of the term in the
+     *  term characters, df, pointer and byte length of the postings,
+     *  and the highest tfScore() of the term (a float), see MaxScore in
+     *  HashedIndex.
+     */
+    private static final int ENTRY_SIZE = 24;
+
+    /**
+     *  The postings file is mapped in windows of 2 * CHUNK_SIZE bytes,
+     *  starting every CHUNK_SIZE bytes, since a mapping is at most 2GB.
+     *  The postings of a term starting in a chunk are then always in
+     *  the window of that chunk.
+     */
+    private static final long CHUNK_SIZE = 1 << 29;
+
+    /** The number of terms. */
+    private int numTerms;
+
+    /** The mapped dictionary entries. */
+    private ByteBuffer entries;
+
+    /** The characters of all the terms, in sorted order. */
+    private CharBuffer termChars;
+
+    /** The mapped windows of the postings file. */
+    private MappedByteBuffer[] postings;
+
+    /** The champion tiers, none if the index was written without. */
+    private DiskIndex[] tiers = new DiskIndex[0];
+
+    /**
+     *  Opens the index written to dir by a Writer.
+     */
+    public DiskIndex(File dir) throws IOException {
+    	FileChannel channel = new RandomAccessFile(new File(dir, DICTIONARY_FILE), "r").getChannel();
+    	try {
+    		MappedByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    		if (dictionary.getInt(0) != MAGIC) {
+    			throw new IOException("Not a dictionary file: " + dir);
+    		}
+    		numDocuments = dictionary.getInt(4);
+    		numTerms = dictionary.getInt(8);
+    		dictionary.position(HEADER_SIZE);
+    		entries = dictionary.slice();
+    		dictionary.position(HEADER_SIZE + numTerms * ENTRY_SIZE + 4);
+    		termChars = dictionary.slice().asCharBuffer();
+    	} finally {
+    		channel.close();
+    	}
+    	// a mapping stays valid after its channel is closed.
+
+    	channel = new RandomAccessFile(new File(dir, POSTINGS_FILE), "r").getChannel();
+    	try {
+    		long size = channel.size();
+    		postings = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+    		for (int i = 0; i < postings.length; i++) {
+    			long start = i * CHUNK_SIZE;
+    			postings[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+    					Math.min(2 * CHUNK_SIZE, size - start));
+    		}
+    	} finally {
+    		channel.close();
+    	}
+
+    	File file = new File(dir, NORMS_FILE);
+    	norms = new float[file.isFile() ? (int) (file.length() / 4) : 0];
+    	if (norms.length > 0) {
+    		channel = new RandomAccessFile(file, "r").getChannel();
+    		try {
+    			channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asFloatBuffer().get(norms);
+    		} finally {
+    			channel.close();
+    		}
+    	}
+    	// the tiers have no norms, they are scored with the norms of the index.
+
+    	file = new File(dir, DocumentStore.DOCUMENTS_FILE);
+    	documents = file.isFile() ? DocumentStore.open(file) : new DocumentStore();
+
+    	ArrayList<DiskIndex> foo = new ArrayList<DiskIndex>();
+    	for (int t = 0; new File(dir, TIER_DIR + t).isDirectory(); t++) {
+    		foo.add(new DiskIndex(new File(dir, TIER_DIR + t)));
+    	}
+    	tiers = foo.toArray(tiers);
+    }
+
+    /**
+     *  The index is read-only.
+     */
+    public void insert(String token, int docID, int offset) {
+    	throw new UnsupportedOperationException("DiskIndex is read-only");
+    }
+
+    public void insert(int termID, int docID, int offset) {
+    	throw new UnsupportedOperationException("DiskIndex is read-only");
+    }
+
+    /**
+     *  Returns all the words in the index, in sorted order.
+     */
+    public Iterator<String> getDictionary() {
+    	return new Iterator<String>() {
+    		private int i = 0;
+
+    		public boolean hasNext() {
+    			return i < numTerms;
+    		}
+
+    		public String next() {
+    			if (i >= numTerms) {
+    				throw new NoSuchElementException();
+    			}
+    			return getTerm(i++);
+    		}
+
+    		public void remove() {
+    			throw new UnsupportedOperationException();
+    		}
+    	};
+    }
+
+    /**
+     *  Returns the number of terms in the index.
+     */
+    public int getNumTerms() {
+    	return numTerms;
+    }
+
+    /**
+     *  Returns the number of postings of token, or 0 if the term is
+     *  not in the index.
+     */
+    public int getDf(String token) {
+    	int i = find(token);
+    	return i < 0 ? 0 : entries.getInt(i * ENTRY_SIZE + 4);
+    }
+
+    /**
+     *  Decodes the postings for a specific term from the mapped file,
+     *  or returns null if the term is not in the index.
+     */
+    public PostingsList getPostings( String token ) {
+    	int i = find(token);
+    	if (i < 0) {
+    		return null;
+    	}
+    	return getPostings(i);
+    }
+
+    /**
+     *  Returns the number of token in the dictionary, which is its
+     *  termID in this index, or -1 if the term is not in the index.
+     */
+    public int getTermID(String token) {
+    	return find(token);
+    }
+
+    /**
+     *  Returns the highest tfScore() of term i, stored by the Writer.
+     */
+    protected double getMaxTfScore(int i) {
+    	return entries.getFloat(i * ENTRY_SIZE + 20);
+    }
+
+    /**
+     *  Returns the number of postings of term i.
+     */
+    protected int getDf(int i) {
+    	return i < 0 || i >= numTerms ? 0 : entries.getInt(i * ENTRY_SIZE + 4);
+    }
+
+    /**
+     *  Decodes the postings of term i in the given champion tier, which
+     *  only has the terms with more postings than the tier. The other
+     *  terms, and all of them if there are no tiers, have their full
+     *  postings.
+     */
+    protected PostingsList getChampions(int tier, int i) {
+    	PostingsList list = null;
+    	if (tier < tiers.length) {
+    		list = tiers[tier].getPostings(getTerm(i));
+    	}
+    	return list != null ? list : getPostings(i);
+    }
+
+    /**
+     *  Returns a cursor over the postings of term i in the given
+     *  champion tier, or over its full postings if the tier does not
+     *  have the term (see getChampions()).
+     */
+    protected PostingsCursor getChampionCursor(int tier, int i) {
+    	PostingsCursor cursor = null;
+    	if (tier < tiers.length) {
+    		cursor = tiers[tier].getCursor(tiers[tier].find(getTerm(i)));
+    	}
+    	return cursor != null ? cursor : getCursor(i);
+    }
+
+    /**
+     *  Decodes all the postings of term i from the mapped file, or
+     *  returns null if there is no such term. The search uses
+     *  getCursor() instead.
+     */
+    public PostingsList getPostings(int i) {
+    	ByteBuffer buf = postings(i);
+    	return buf == null ? null : PostingsCodec.decode(buf, getDf(i));
+    }
+
+    /**
+     *  Returns a cursor over the postings of term i in the mapped file,
+     *  decoding nothing yet, or null if there is no such term.
+     */
+    public PostingsCursor getCursor(int i) {
+    	ByteBuffer buf = postings(i);
+    	return buf == null ? null : new PostingsCodec.Cursor(buf, getDf(i));
+    }
+
+    /**
+     *  Returns a buffer positioned at the postings of term i, or null
+     *  if there is no such term.
+     */
+    private ByteBuffer postings(int i) {
+    	if (i < 0 || i >= numTerms) {
+    		return null;
+    	}
+    	long pointer = entries.getLong(i * ENTRY_SIZE + 8);
+    	ByteBuffer buf = postings[(int) (pointer / CHUNK_SIZE)].duplicate();
+    	buf.position((int) (pointer % CHUNK_SIZE));
+    	// a duplicate has its own position, so searches can run in parallel.
+    	return buf;
+    }
+
+    /**
+     *  The index is already on disk.
+     */
+    public void writeFile() { }
+
+    /**
+     *  Drops the mappings, which are released by the garbage collector.
+     */
+    public void cleanup() {
+    	numTerms = 0;
+    	entries = null;
+    	termChars = null;
+    	postings = null;
+    	norms = new float[0];
+    	for (DiskIndex tier : tiers) {
+    		tier.cleanup();
+    	}
+    	tiers = new DiskIndex[0];
+    }
+
+    /**
+     *  Binary searches the dictionary for token.
+     *
+     *  @return the number of the term, or -1 if it is not in the index.
+     */
+    private int find(String token) {
+    	int lo = 0;
+    	int hi = numTerms - 1;
+    	while (lo <= hi) {
+    		int mid = (lo + hi) >>> 1;
+    		int cmp = compareTerm(mid, token);
+    		if (cmp < 0) {
+    			lo = mid + 1;
+    		} else if (cmp > 0) {
+    			hi = mid - 1;
+    		} else {
+    			return mid;
+    		}
+    	}
+    	return -1;
+    }
+
+    /**
+     *  Compares term i with token like String.compareTo, without
+     *  creating a String.
+     */
+    private int compareTerm(int i, String token) {
+    	int start = termStart(i);
+    	int length = termStart(i + 1) - start;
+    	int n = Math.min(length, token.length());
+    	for (int k = 0; k < n; k++) {
+    		int cmp = termChars.get(start + k) - token.charAt(k);
+    		if (cmp != 0) {
+    			return cmp;
+    		}
+    	}
+    	return length - token.length();
+    }
+
+    private String getTerm(int i) {
+    	int start = termStart(i);
+    	char[] chars = new char[termStart(i + 1) - start];
+    	for (int k = 0; k < chars.length; k++) {
+    		chars[k] = termChars.get(start + k);
+    	}
+    	return new String(chars);
+    }
+
+    /**
+     *  Returns where term i starts in termChars. termStart(numTerms)
+     *  is the total number of characters.
+     */
+    private int termStart(int i) {
+    	return entries.getInt(i * ENTRY_SIZE);
+    }
+
+
+    /**
+     *  Merges the indexes in segments into one index written to dir.
+     *  The segments must have been written in docID order, so that the
+     *  postings of a term are merged by appending them segment after
+     *  segment. The terms are merged with a priority queue holding the
+     *  next term of each segment, the ties broken by segment order.
+     *  The champion tiers are written too if tiers is true.
+     */
+    public static void merge(File[] segments, File dir, int numDocuments, boolean tiers) throws IOException {
+    	final DiskIndex[] indexes = new DiskIndex[segments.length];
+    	final String[] heads = new String[segments.length];
+    	// the next term of each segment.
+    	int[] next = new int[segments.length];
+    	PriorityQueue<Integer> queue = new PriorityQueue<Integer>(Math.max(1, segments.length),
+    			new Comparator<Integer>() {
+    		public int compare(Integer foo, Integer bar) {
+    			int cmp = heads[foo].compareTo(heads[bar]);
+    			return cmp != 0 ? cmp : foo - bar;
+    		}
+    	});
+    	for (int i = 0; i < segments.length; i++) {
+    		indexes[i] = new DiskIndex(segments[i]);
+    		if (indexes[i].numTerms > 0) {
+    			heads[i] = indexes[i].getTerm(0);
+    			queue.add(i);
+    		}
+    	}
+
+    	Writer writer = new Writer(dir, numDocuments, tiers);
+    	while (!queue.isEmpty()) {
+    		String token = heads[queue.peek()];
+    		PostingsList list = new PostingsList();
+    		while (!queue.isEmpty() && heads[queue.peek()].equals(token)) {
+    			int i = queue.poll();
+    			list.append(indexes[i].getPostings(next[i]));
+    			next[i]++;
+    			if (next[i] < indexes[i].numTerms) {
+    				heads[i] = indexes[i].getTerm(next[i]);
+    				queue.add(i);
+    			}
+    		}
+    		// the postings of token in all the segments, in docID order.
+    		writer.add(token, list);
+    	}
+    	writer.close();
+    	for (DiskIndex index : indexes) {
+    		index.cleanup();
+    	}
+    }
+
+
+    /**
+     *   Writes an index that can be opened by DiskIndex. The terms have
+     *   to be added in sorted order.
+     *
+     *   The norms of the documents are summed while the terms are added,
+     *   but the highest tfScore() and the champion tiers of a term need
+     *   the norms of all the documents, so close() reads the postings
+     *   back once the norms are known.
+     */
+    public static class Writer {
+
+    	private File dir;
+    	private int numDocuments;
+    	private boolean tiers;
+    	private ArrayList<String> terms = new ArrayList<String>();
+    	private ArrayList<long[]> entries = new ArrayList<long[]>();
+    	// (df, pointer, length, bits of the highest tfScore) of each term.
+    	private DataOutputStream postings;
+    	private long pointer = 0;
+    	private double[] sums;
+    	// the squared norms, see HashedIndex.addSquaredWeights().
+    	private float[] norms;
+    	// given to the writer of a tier, which has the documents of the index.
+
+    	public Writer(File dir, int numDocuments) throws IOException {
+    		this(dir, numDocuments, false);
+    	}
+
+    	/**
+    	 *  Creates a writer that also writes the champion tiers of the
+    	 *  terms if tiers is true.
+    	 */
+    	public Writer(File dir, int numDocuments, boolean tiers) throws IOException {
+    		this(dir, numDocuments, tiers, null);
+    	}
+
+    	private Writer(File dir, int numDocuments, boolean tiers, float[] norms) throws IOException {
+    		this.dir = dir;
+    		this.numDocuments = numDocuments;
+    		this.tiers = tiers;
+    		this.norms = norms;
+    		sums = new double[norms == null ? numDocuments : 0];
+    		dir.mkdirs();
+    		postings = new DataOutputStream(new BufferedOutputStream(
+    				new FileOutputStream(new File(dir, POSTINGS_FILE))));
+    	}
+
+    	/**
+    	 *  Appends the postings of token, which must come after all the
+    	 *  terms added so far.
+    	 */
+    	public void add(String token, PostingsList list) throws IOException {
+    		if (!terms.isEmpty() && terms.get(terms.size() - 1).compareTo(token) >= 0) {
+    			throw new IllegalArgumentException("Terms out of order: " + token);
+    		}
+    		byte[] bytes = PostingsCodec.encode(list);
+    		postings.write(bytes);
+    		terms.add(token);
+    		entries.add(new long[] { list.size(), pointer, bytes.length, 0 });
+    		pointer += bytes.length;
+    		if (norms == null) {
+    			sums = HashedIndex.addSquaredWeights(sums, list, numDocuments);
+    		}
+    	}
+
+    	/**
+    	 *  Writes the norms, the champion tiers and the dictionary, and
+    	 *  closes the files.
+    	 */
+    	public void close() throws IOException {
+    		postings.close();
+    		if (norms == null) {
+    			norms = HashedIndex.norms(sums);
+    			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    					new FileOutputStream(new File(dir, NORMS_FILE))));
+    			for (float norm : norms) {
+    				out.writeFloat(norm);
+    			}
+    			out.close();
+    		}
+
+    		Writer[] writers = new Writer[tiers ? HashedIndex.CHAMPION_TIERS.length : 0];
+    		for (int t = 0; t < writers.length; t++) {
+    			writers[t] = new Writer(new File(dir, TIER_DIR + t), numDocuments, false, norms);
+    		}
+    		DataInputStream in = new DataInputStream(new BufferedInputStream(
+    				new FileInputStream(new File(dir, POSTINGS_FILE))));
+    		for (int i = 0; i < terms.size(); i++) {
+    			long[] entry = entries.get(i);
+    			byte[] bytes = new byte[(int) entry[2]];
+    			in.readFully(bytes);
+    			PostingsList list = PostingsCodec.decode(ByteBuffer.wrap(bytes), (int) entry[0]);
+    			entry[3] = Float.floatToIntBits(HashedIndex.maxTfScore(list, norms));
+    			for (int t = 0; t < writers.length; t++) {
+    				if (list.size() > HashedIndex.CHAMPION_TIERS[t]) {
+    					writers[t].add(terms.get(i), HashedIndex.champions(list, HashedIndex.CHAMPION_TIERS[t], norms));
+    				}
+    			}
+    			// a tier only has the terms with more postings than it keeps.
+    		}
+    		in.close();
+    		for (Writer writer : writers) {
+    			writer.close();
+    		}
+
+    		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    				new FileOutputStream(new File(dir, DICTIONARY_FILE))));
+    		out.writeInt(MAGIC);
+    		out.writeInt(numDocuments);
+    		out.writeInt(terms.size());
+    		int termStart = 0;
+    		for (int i = 0; i < terms.size(); i++) {
+    			long[] entry = entries.get(i);
+    			out.writeInt(termStart);
+    			out.writeInt((int) entry[0]);
+    			out.writeLong(entry[1]);
+    			out.writeInt((int) entry[2]);
+    			out.writeInt((int) entry[3]);
+    			termStart += terms.get(i).length();
+    		}
+    		out.writeInt(termStart);
+    		// the fixed-width entries, then the characters of the terms.
+    		for (String token : terms) {
+    			out.writeChars(token);
+    		}
+    		out.close();
+    	}
+    }
+
+}
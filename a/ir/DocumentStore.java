@@ -0,0 +1,168 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the paths and lengths of the documents.
+ * replaces the docIDs and docLengths maps, which were keyed by "" + docID.
+ */
+
+package ir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ *   Stores the path and the length of each document in arrays indexed
+ *   by docID, since the docIDs are dense. The paths are kept as one
+ *   table of characters, the path of docID running from offsets[docID]
+ *   to offsets[docID + 1].
+ *
+ *   A store written by writeFile() is opened with the path table
+ *   memory-mapped, so only the paths of the documents shown are read.
+ */
+public class DocumentStore {
+
+    /** The name of the file of the store in the index directory. */
+    public static final String DOCUMENTS_FILE = "documents";
+
+    /** Identifies the file format, changed with the format. */
+    private static final int MAGIC = 0x49524401;
+
+    /** The size of the file header: magic, number of documents. */
+    private static final int HEADER_SIZE = 8;
+
+    /** The start of the path of each docID, and the end of the last. */
+    private int[] offsets = new int[17];
+
+    /** The number of tokens of each docID. */
+    private int[] lengths = new int[16];
+
+    /** The characters of the paths, a heap buffer or the mapped file. */
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
+    private int size = 0;
+
+    /**
+     *  Adds the path of docID, which must be the next docID.
+     */
+    public void add(int docID, String path) {
+    	if (docID != size) {
+    		throw new IllegalArgumentException("Documents out of order: " + docID);
+    	}
+    	if (size == lengths.length) {
+    		lengths = Arrays.copyOf(lengths, 2 * size);
+    		offsets = Arrays.copyOf(offsets, 2 * size + 1);
+    	}
+    	int end = offsets[size];
+    	if (end + path.length() > chars.capacity()) {
+    		CharBuffer buf = CharBuffer.allocate(Math.max(end + path.length(), 2 * chars.capacity()));
+    		chars.position(0).limit(end);
+    		buf.put(chars);
+    		chars = buf;
+    	}
+    	chars.position(end);
+    	chars.put(path);
+    	offsets[++size] = end + path.length();
+    }
+
+    /**
+     *  Sets the number of tokens of docID.
+     */
+    public void setLength(int docID, int length) {
+    	lengths[docID] = length;
+    }
+
+    /**
+     *  Returns the path of docID, or null if there is no such document.
+     */
+    public String getPath(int docID) {
+    	if (docID < 0 || docID >= size) {
+    		return null;
+    	}
+    	char[] path = new char[offsets[docID + 1] - offsets[docID]];
+    	for (int i = 0; i < path.length; i++) {
+    		path[i] = chars.get(offsets[docID] + i);
+    	}
+    	// absolute gets, so paths can be read in parallel.
+    	return new String(path);
+    }
+
+    /**
+     *  Returns the number of tokens of docID, 0 if it is unknown.
+     */
+    public int getLength(int docID) {
+    	return docID < 0 || docID >= size ? 0 : lengths[docID];
+    }
+
+    /**
+     *  Returns the number of documents.
+     */
+    public int size() {
+    	return size;
+    }
+
+    /**
+     *  Writes the store to file, where it can be opened by open().
+     */
+    public void writeFile(File file) throws IOException {
+    	file.getParentFile().mkdirs();
+    	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    			new FileOutputStream(file)));
+    	out.writeInt(MAGIC);
+    	out.writeInt(size);
+    	for (int i = 0; i < size; i++) {
+    		out.writeInt(lengths[i]);
+    	}
+    	for (int i = 0; i <= size; i++) {
+    		out.writeInt(offsets[i]);
+    	}
+    	// the fixed-width arrays, then the characters of the paths.
+    	for (int i = 0; i < offsets[size]; i++) {
+    		out.writeChar(chars.get(i));
+    	}
+    	out.close();
+    }
+
+    /**
+     *  Opens the store written to file. The arrays are read, and the
+     *  path table is mapped. The store is read-only.
+     */
+    public static DocumentStore open(File file) throws IOException {
+    	FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+    	try {
+    		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    		if (buf.getInt(0) != MAGIC) {
+    			throw new IOException("Not a documents file: " + file);
+    		}
+    		DocumentStore store = new DocumentStore();
+    		store.size = buf.getInt(4);
+    		store.lengths = new int[store.size];
+    		store.offsets = new int[store.size + 1];
+    		buf.position(HEADER_SIZE);
+    		buf.asIntBuffer().get(store.lengths);
+    		buf.position(HEADER_SIZE + 4 * store.size);
+    		buf.asIntBuffer().get(store.offsets);
+    		buf.position(HEADER_SIZE + 4 * (2 * store.size + 1));
+    		store.chars = buf.slice().asCharBuffer();
+    		return store;
+    	} finally {
+    		channel.close();
+    	}
+    	// a mapping stays valid after its channel is closed.
+    }
+
+}
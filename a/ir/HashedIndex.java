@@ -18,41 +18,230 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 /**
- *   Implements an inverted index as a Hashtable from words to PostingsLists.
+ *   Implements an inverted index as an array from termIDs to PostingsLists.
+ *   The termIDs are given by a TermDictionary, which can be shared with
+ *   other indexes.
  */
 public class HashedIndex implements Index {
 
-    /** The index as a hashtable. */
-    private HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
+    /** The dictionary giving the termIDs. */
+    protected TermDictionary terms;
+    
+    /** The paths and lengths of the documents. */
+    protected DocumentStore documents;
+    
+    /** The index as an array, null for the terms not in the index. */
+    private PostingsList[] index = new PostingsList[INITIAL_CAPACITY];
+    
+    /** The termIDs in the index, in the order they were added. */
+    private int[] termIDs = new int[INITIAL_CAPACITY];
+    private int numTerms = 0;
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
     /** store the number of documents. */
-    private int numDocuments;
+    protected int numDocuments;
+    
+    /** Rough heap bytes of a term (slots and PostingsList). */
+    static final int TERM_BYTES = 160;
+    /** Rough heap bytes of a posting, including the slack of the arrays. */
+    static final int POSTING_BYTES = 30;
+    /** Rough heap bytes of a position, including the slack of the array. */
+    static final int POSITION_BYTES = 6;
+    
+    /** The estimated heap bytes of the postings, see estimateMemory(). */
+    private long memory = 0;
+    
+    /**
+     *  The Euclidean length of the tf-idf vector of each docID, which
+     *  normalizes tfScore(), or null if it has to be computed, see
+     *  getNorms().
+     */
+    protected float[] norms = null;
+    
+    /**
+     *  The highest tfScore() of each termID, or 0 if it has to be
+     *  computed, see getMaxTfScore().
+     */
+    private float[] maxTfScores = new float[0];
+    
+    /**
+     *  The number of postings in each champion tier, the postings with
+     *  the highest tfScore() of a term. The full postings are the last
+     *  tier.
+     */
+    static final int[] CHAMPION_TIERS = { 32, 256 };
+    
+    /**
+     *  The champion tiers of each termID, null if they have to be
+     *  computed, see getChampions().
+     */
+    private PostingsList[][] champions = new PostingsList[CHAMPION_TIERS.length][0];
+    
+    /** The pagerank of the documents, shared by all the indexes. */
+    private static PageRankScores pagerank = new PageRankScores(new File(PageRankScores.SCORE_FILE));
+    
+    /** The topic sensitive pageranks, blended by the topics of a query. */
+    private static TopicScores topics = new TopicScores(new File(TopicScores.TOPIC_DIR));
     
     /**
-     * a hashmap storing the tf_idf scores.
-     * key: the terms
-     * value: an arraylist w/form (docID, score)
+     *  The score accumulator of each searching thread, reset at each
+     *  query instead of allocating one as large as the collection.
+     */
+    private ThreadLocal<ScoreAccumulator> accumulators = new ThreadLocal<ScoreAccumulator>() {
+    	protected ScoreAccumulator initialValue() {
+    		return new ScoreAccumulator(numDocuments);
+    	}
+    };
+    
+    /**
+     * a hashmap storing the tf_idf scores of the last ranked search.
+     * key: termID << 32 | docID, see key().
+     * value: the score
      **/
-    private HashMap<String, HashMap<Integer, Double>> tfIdfScores = new 
-    		HashMap<String, HashMap<Integer, Double>>();
+    private LongMap<Double> tfIdfScores = new LongMap<Double>();
+    
+    /**
+     *  Creates an index with its own dictionary and documents.
+     */
+    public HashedIndex() {
+    	this(new TermDictionary());
+    }
+    
+    /**
+     *  Creates an index taking the termIDs from terms.
+     */
+    public HashedIndex(TermDictionary terms) {
+    	this(terms, new DocumentStore());
+    }
+    
+    /**
+     *  Creates an index taking the termIDs from terms, with the given
+     *  documents, which can be shared with other indexes.
+     */
+    public HashedIndex(TermDictionary terms, DocumentStore documents) {
+    	this.terms = terms;
+    	this.documents = documents;
+    }
+    
+    public DocumentStore getDocuments() {
+    	return documents;
+    }
+    
+    /**
+     *  Returns the topic sensitive pageranks of the queries.
+     */
+    public static TopicScores getTopicScores() {
+    	return topics;
+    }
+    
+    /**
+     *  Rereads the pageranks that have changed, and returns a number
+     *  that changes with them, for telling whether results ranked by
+     *  pagerank are still valid.
+     */
+    public static long getPageRankVersion() {
+    	pagerank.refresh();
+    	topics.refresh();
+    	return ((long) pagerank.getVersion() << 32) | (topics.getVersion() & 0xFFFFFFFFL);
+    }
 
     /**
      *  Inserts this token in the index.
      */
     public void insert(String token, int docID, int offset) {
-    	if (!index.containsKey(token)) {
-    		// when the token in the hashmap is not found.
-    		index.put(token, new PostingsList());
-    		// create a new hashmap.
+    	insert(terms.add(token), docID, offset);
+    }
+    
+    /**
+     *  Inserts the term termID in the index.
+     */
+    public void insert(int termID, int docID, int offset) {
+    	if (termID >= index.length) {
+    		index = Arrays.copyOf(index, Math.max(termID + 1, 2 * index.length));
     	}
-    	index.get(token).insert(docID, offset, 1.0);
+    	invalidate(termID);
+    	PostingsList list = index[termID];
+    	if (list == null) {
+    		// when the term is not in the index.
+    		list = new PostingsList();
+    		add(termID, list);
+    		memory += TERM_BYTES;
+    	}
+    	int size = list.size();
+    	list.insert(docID, offset, 1.0);
     	// insert to the hashmap.
+    	memory += list.size() > size ? POSTING_BYTES + POSITION_BYTES : POSITION_BYTES;
+    }
+    
+    /**
+     *  Appends the postings of partial, whose docIDs all come after the
+     *  docIDs in this index. The PostingsLists of partial are taken over.
+     */
+    public void merge(HashedIndex partial) {
+    	if (partial.terms != terms) {
+    		throw new IllegalArgumentException("The indexes have different dictionaries");
+    	}
+    	if (partial.index.length > index.length) {
+    		index = Arrays.copyOf(index, partial.index.length);
+    	}
+    	for (int i = 0; i < partial.numTerms; i++) {
+    		int termID = partial.termIDs[i];
+    		invalidate(termID);
+    		PostingsList list = index[termID];
+    		if (list == null) {
+    			add(termID, partial.index[termID]);
+    		} else {
+    			list.append(partial.index[termID]);
+    		}
+    	}
+    	memory += partial.memory;
+    }
+    
+    /**
+     *  Forgets the upper bound and the champions of a changed term, and
+     *  the norms, which change with the idf of the term.
+     */
+    private void invalidate(int termID) {
+    	if (termID < maxTfScores.length) {
+    		maxTfScores[termID] = 0;
+    	}
+    	for (PostingsList[] tier : champions) {
+    		if (termID < tier.length) {
+    			tier[termID] = null;
+    		}
+    	}
+    	norms = null;
+    }
+    
+    /**
+     *  Puts a new term in the index.
+     */
+    private void add(int termID, PostingsList list) {
+    	index[termID] = list;
+    	if (numTerms == termIDs.length) {
+    		termIDs = Arrays.copyOf(termIDs, 2 * numTerms);
+    	}
+    	termIDs[numTerms++] = termID;
+    }
+    
+    /**
+     *  Returns the estimated heap bytes taken by the postings, used for
+     *  deciding when to flush the index to disk.
+     */
+    public long estimateMemory() {
+    	return memory;
     }
 
 
@@ -60,7 +249,24 @@ public class HashedIndex implements Index {
      *  Returns all the words in the index.
      */
     public Iterator<String> getDictionary() {
-		return index.keySet().iterator();
+    	return new Iterator<String>() {
+    		private int i = 0;
+
+    		public boolean hasNext() {
+    			return i < numTerms;
+    		}
+
+    		public String next() {
+    			if (i >= numTerms) {
+    				throw new NoSuchElementException();
+    			}
+    			return terms.getTerm(termIDs[i++]);
+    		}
+
+    		public void remove() {
+    			throw new UnsupportedOperationException();
+    		}
+    	};
     }
     
 
@@ -69,65 +275,69 @@ public class HashedIndex implements Index {
      *  if the term is not in the index.
      */
     public PostingsList getPostings( String token ) {
-    	if (!index.containsKey(token)) {
-    		return null;
-    	} else {
-    		return index.get(token);
-    	}
-    	// above for task 1.1~5.
-    	// below for task 1.6.
-    	/*PostingsList list = new PostingsList();
-		File file = new File("" + "./index/" + token + ".index");
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(file));
-			// create a buffer reader.
-			String line;
-		    while ((line = br.readLine()) != null) {
-		    	String[] str = line.split("\\s+");
-		    	// split by space.
-		    	list.insert(Integer.parseInt(str[0]), Integer.parseInt(str[1]));
-		    }
-		    br.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return list;*/
+    	int termID = getTermID(token);
+    	return termID < 0 ? null : getPostings(termID);
     }
-    // above is the method version for task 1.1~5.
-    // for task 1.6, the method is implemented below.
     
+    /**
+     *  Returns the postings of termID, or null if the term is not in
+     *  the index.
+     */
+    public PostingsList getPostings(int termID) {
+    	return termID < index.length ? index[termID] : null;
+    }
+    
+    /**
+     *  Returns a cursor over the postings of termID, or null if the
+     *  term is not in the index. The search reads the postings through
+     *  cursors, so a DiskIndex does not have to decode them all.
+     */
+    public PostingsCursor getCursor(int termID) {
+    	PostingsList list = getPostings(termID);
+    	return list == null ? null : list.cursor();
+    }
+    
+    /**
+     *  Returns the termID of token, or -1 if the term is unknown.
+     */
+    public int getTermID(String token) {
+    	return terms.lookup(token);
+    }
+    // for task 1.6, the postings are read from disk by a DiskIndex.
+    
+    /**
+     *  Writes the index to DiskIndex.INDEX_DIR, where it can be
+     *  opened by a DiskIndex.
+     */
     public void writeFile() {
-    	Iterator<String> stringSet = index.keySet().iterator();
-    	// get the token set.
-    	while (stringSet.hasNext()) {
-    		String token = stringSet.next();
-    		File file = new File("" + "./index/" + token + ".index");
-    		if (!file.exists()) {
-    			try {
-    				file.createNewFile();
-    			} catch (IOException e) {
-    				e.printStackTrace();
-    			}
-    		}
-    		
-    		try {
-	    		FileWriter fw = new FileWriter(file, true);
-	    		// allow append mode.
-	    		PostingsList list = index.get(token);
-	    		for (int i = 0; i < list.size(); i++) {
-	    			PostingsEntry entry = list.get(i);
-	    			int id = entry.docID;
-	    			int offset = entry.offset;
-	    			fw.append(id + " " + offset);
-	    			fw.append(System.lineSeparator());
-	    		}
-	    		// write to the file, one token for each line.
-	    		fw.close();
-	    		
-    		} catch (IOException e) {
-    			e.printStackTrace();
+    	try {
+    		writeFile(new File(DiskIndex.INDEX_DIR), true);
+    		documents.writeFile(new File(DiskIndex.INDEX_DIR, DocumentStore.DOCUMENTS_FILE));
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+    
+    /**
+     *  Writes the index to dir, where it can be opened by a DiskIndex,
+     *  with the champion tiers unless it is only a segment.
+     */
+    public void writeFile(File dir, boolean tiers) throws IOException {
+    	Integer[] sorted = new Integer[numTerms];
+    	for (int i = 0; i < numTerms; i++) {
+    		sorted[i] = termIDs[i];
+    	}
+    	Arrays.sort(sorted, new Comparator<Integer>() {
+    		public int compare(Integer foo, Integer bar) {
+    			return terms.getTerm(foo).compareTo(terms.getTerm(bar));
     		}
+    	});
+    	// the dictionary is written in sorted order.
+    	DiskIndex.Writer writer = new DiskIndex.Writer(dir, numDocuments, tiers);
+    	for (int termID : sorted) {
+    		writer.add(terms.getTerm(termID), index[termID]);
     	}
+    	writer.close();
     }
 
 
@@ -135,108 +345,428 @@ public class HashedIndex implements Index {
      *  Searches the index for postings matching the query.
      */
     public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return search(query, queryType, rankingType, structureType, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  Searches the index for postings matching the query. A ranked
+     *  query returns only the k best documents, best first.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
 		PostingsList list = new PostingsList();
 		long startTime = System.nanoTime(); // the start time
 		// initialize a list.
 		if (queryType == Index.INTERSECTION_QUERY) {
-			for (int i = 0; i < query.terms.size(); i++) {
-				String token = query.terms.get(i);
-				PostingsList listFoo = this.getPostings(token);
-				if (list.size() == 0) {
-					list.append(listFoo);
-				} else {
-					list.intersect(listFoo);
+			PostingsCursor[] cursors = getCursors(query);
+			if (cursors != null) {
+				list = PostingsList.intersect(cursors);
+			}
+			// skip from the rarest term, none if a term is missing.
+		} else if (queryType == Index.PHRASE_QUERY || queryType == Index.PROXIMITY_QUERY) {
+			PostingsCursor[] cursors = getCursors(query);
+			if (cursors != null) {
+				list = PostingsList.phrase(cursors, queryType == Index.PHRASE_QUERY ? 0 : query.slop);
+			}
+			// the postings in query order, none if a term is missing.
+		} else if (queryType == Index.RANKED_QUERY) {
+			int n = query.terms.size();
+			int[] termIDs = new int[n];
+			double[] weights = new double[n];
+			// the termID and weight * idf of each query term.
+			int m = 0;
+			for (int i = 0; i < n; i++) {
+				termIDs[m] = this.getTermID(query.terms.get(i));
+				int df = termIDs[m] < 0 ? 0 : this.getDf(termIDs[m]);
+				if (df > 0) {
+					weights[m] = query.weights.get(i) * idf(df) * idf(df);
+					// the idf of the query vector times the one of the document vector.
+					m++;
 				}
 			}
-			// retrieve all entries.
-			list.removeDuplicate(rankingType);
-		} else if (queryType == Index.PHRASE_QUERY) {
-			int flag = 0;
-			for (int i = 0; i < query.terms.size(); i++) {
-				String token = query.terms.get(i);
-				PostingsList listFoo = this.getPostings(token);
-				if (list.size() == 0) {
-					list.append(listFoo);
-				} else {
-					list.appendPhrase(listFoo, flag);
+			termIDs = Arrays.copyOf(termIDs, m);
+			weights = Arrays.copyOf(weights, m);
+			PostingsCursor[] cursors = new PostingsCursor[m];
+			
+			boolean done = false;
+			int tier = -1;
+			if (rankingType == Index.TF_IDF && query.tiered) {
+				while (tier + 1 < CHAMPION_TIERS.length && !done) {
+					tier++;
+					for (int i = 0; i < m; i++) {
+						cursors[i] = this.getChampionCursor(tier, termIDs[i]);
+					}
+					list = searchMaxScore(cursors, termIDs, weights, k);
+					done = list.size() >= k;
 				}
-				flag++;
+				// a lower tier only when there are too few documents.
 			}
-			list.removeDuplicate(rankingType);
-		} else if (queryType == Index.RANKED_QUERY) {
-			Hashtable<Integer, Double> pagerank = new Hashtable<Integer, Double>();
-			double idf = 0.0;
-			double weight = 0.0;
 			
-			for (int i = 0; i < query.terms.size(); i++) {
-				String token = query.terms.get(i);
-				PostingsList listFoo = this.getPostings(token);
-				PostingsList listBar = new PostingsList();
-				listBar.append(listFoo);
-				// copy w/protecting original data.
-				listBar.removeDuplicate(rankingType);
-				listBar.sortChampionList(10);
-				// for task 3.3.
-				HashMap<Integer, Double> scores = new HashMap<Integer, Double>();
-				// this arrayList stores the tf_idf scores of the specified token.
-				weight = query.weights.get(i);
+			if (!done) {
+				tier = -1;
+				for (int i = 0; i < m; i++) {
+					cursors[i] = this.getCursor(termIDs[i]);
+				}
+				// the full postings, the last tier.
+			}
+			if (!done && rankingType == Index.TF_IDF) {
+				list = searchMaxScore(cursors, termIDs, weights, k);
+				// exact top k, without scoring every posting.
+			} else if (!done) {
+				ScoreAccumulator scores = accumulators.get();
+				scores.reset();
+				// the summed score of each matching document.
+				for (int i = 0; i < m; i++) {
+					PostingsCursor entry = cursors[i];
+					while (entry.next()) {
+						if (rankingType != Index.PAGERANK) {
+							scores.add(entry.docID(), weights[i] * tfScore(entry.tf(), entry.docID()));
+							// the tf_idf score (normalized).
+						} else {
+							scores.add(entry.docID(), 0);
+						}
+					} // while
+				} // for
 				
-				if (rankingType != Index.PAGERANK) {
-					idf = Math.log((double)numDocuments / (double)listBar.size());
-					// calcualte the idf.
-					for (int j = 0; j < listBar.size(); j++) {
-						PostingsEntry entry = listBar.get(j);
-						entry.score = weight * idf * (1 + Math.log(entry.score)) / 
-								Integer.valueOf(docLengths.get(new Integer(entry.docID).toString()));
-						// the tf_idf score (normalized).
-						scores.put(entry.docID, entry.score);
-					} // for
-				} // if
+				pagerank.refresh();
+				// read the pagerank from file, if it has changed.
+				TopicScores.Blend blend = null;
+				if (!query.topics.isEmpty()) {
+					topics.refresh();
+					blend = topics.blend(query.topics);
+				}
+				// the precomputed topic pageranks, never computed here.
 				
-				if (tfIdfScores.get(token) == null) {
-					tfIdfScores.put(token, scores);
+				if (rankingType == Index.PAGERANK) {
+					for (int i = 0; i < scores.size(); i++) {
+						int docID = scores.getDocID(i);
+						scores.setScore(docID, blend == null ? pagerank.getScore(docID) : blend.getScore(docID));
+					} // for
+				} else if (rankingType == Index.COMBINATION) {
+					for (int i = 0; i < scores.size(); i++) {
+						int docID = scores.getDocID(i);
+						float rank = blend == null ? pagerank.getScore(docID) : blend.getScore(docID);
+						scores.setScore(docID, scores.getScore(docID) * rank);
+					} // for
 				}
-				// save the score into the hashMap.
 				
-				list.expand(listBar, 0);
-			} // for
-							
-			if (rankingType != Index.TF_IDF) {
-				File file = new File("" + "./ir/pagerank.score");
-				try {
-					BufferedReader br = new BufferedReader(new FileReader(file));
-					// create a buffer reader.
-					String line;
-				    while ((line = br.readLine()) != null) {
-				    	String[] str = line.split("\\s+");
-				    	// split by space.
-				    	pagerank.put(Integer.parseInt(str[0]), Double.parseDouble(str[1]));
-				    }
-				    br.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				} // try & catch
-				// read the pagerank from file.
+				list = scores.topK(k);
+				// only the k best are sorted.
 			}
-			
-			if (rankingType == Index.PAGERANK) {
-				for (int i = 0; i < list.size(); i++) {
-					PostingsEntry entry = list.get(i);
-					entry.score = pagerank.get(entry.docID);
-				} // for
-			} else if (rankingType == Index.COMBINATION) {
-				for (int i = 0; i < list.size(); i++) {
-					PostingsEntry entry = list.get(i);
-					entry.score *= pagerank.get(entry.docID);
-				} // for
+			if (rankingType != Index.PAGERANK) {
+				saveTfIdfScores(tier, termIDs, weights, list);
 			}
-			
-			list.sort();
 		}
 		System.out.println("Elapsed time: " + (System.nanoTime() - startTime) + " nanosecond(s)");
 		return list;
     }
     
+    /**
+     *  Returns the k documents with the highest tf-idf scores, found with
+     *  MaxScore. The upper bound of a term is its weight * idf times the
+     *  highest tfScore() in its postings. The terms are ordered by their
+     *  bounds, and the terms with the lowest bounds, summing to at most
+     *  the score of the k:th document so far, are not essential: no
+     *  document containing only those can make it. So only the postings
+     *  of the essential terms are walked, and a document is looked up
+     *  (skipTo) in the other terms only while it can still make it. The
+     *  result is the same as scoring every posting.
+     */
+    private PostingsList searchMaxScore(PostingsCursor[] lists, int[] termIDs, double[] weights, int k) {
+    	int n = lists.length;
+    	final double[] bounds = new double[n];
+    	Integer[] order = new Integer[n];
+    	for (int i = 0; i < n; i++) {
+    		bounds[i] = Math.max(0, weights[i] * getMaxTfScore(termIDs[i]));
+    		order[i] = i;
+    	}
+    	Arrays.sort(order, new Comparator<Integer>() {
+    		public int compare(Integer foo, Integer bar) {
+    			return Double.compare(bounds[foo], bounds[bar]);
+    		}
+    	});
+    	
+    	PostingsCursor[] cursors = new PostingsCursor[n];
+    	int[] docIDs = new int[n];
+    	// the current docID of each cursor, MAX_VALUE at the end.
+    	double[] w = new double[n];
+    	double[] prefix = new double[n + 1];
+    	// prefix[j] is the sum of the bounds of the first j terms.
+    	for (int j = 0; j < n; j++) {
+    		cursors[j] = lists[order[j]];
+    		docIDs[j] = cursors[j].next() ? cursors[j].docID() : Integer.MAX_VALUE;
+    		w[j] = weights[order[j]];
+    		prefix[j + 1] = prefix[j] + bounds[order[j]];
+    	}
+    	
+    	TopK top = new TopK(k);
+    	int essential = 0;
+    	while (true) {
+    		while (essential < n && prefix[essential + 1] <= top.threshold()) {
+    			essential++;
+    		}
+    		// the terms before essential cannot get a document in alone.
+    		int docID = Integer.MAX_VALUE;
+    		for (int j = essential; j < n; j++) {
+    			docID = Math.min(docID, docIDs[j]);
+    		}
+    		if (docID == Integer.MAX_VALUE) {
+    			break;
+    		}
+    		double score = 0;
+    		for (int j = essential; j < n; j++) {
+    			if (docIDs[j] == docID) {
+    				score += w[j] * tfScore(cursors[j].tf(), docID);
+    				docIDs[j] = cursors[j].next() ? cursors[j].docID() : Integer.MAX_VALUE;
+    			}
+    		}
+    		for (int j = essential - 1; j >= 0 && score + prefix[j + 1] > top.threshold(); j--) {
+    			if (docIDs[j] < docID) {
+    				docIDs[j] = cursors[j].skipTo(docID) ? cursors[j].docID() : Integer.MAX_VALUE;
+    			}
+    			if (docIDs[j] == docID) {
+    				score += w[j] * tfScore(cursors[j].tf(), docID);
+    			}
+    		} // for
+    		// a document can only tie with the k:th one, and then loses
+    		// since the docIDs come in increasing order.
+    		top.offer(docID, score);
+    	}
+    	return top.toPostingsList();
+    }
+    
+    /**
+     *  Saves the tf-idf score of each query term in each of the results,
+     *  for getTfIdfScore(). The results are looked up in docID order
+     *  with a new cursor per term, over the postings they were found
+     *  in: the champion tier, or the full postings if tier is -1.
+     */
+    private void saveTfIdfScores(int tier, int[] termIDs, double[] weights, PostingsList results) {
+    	tfIdfScores.clear();
+    	int[] docIDs = new int[results.size()];
+    	for (int j = 0; j < docIDs.length; j++) {
+    		docIDs[j] = results.getDocID(j);
+    	}
+    	Arrays.sort(docIDs);
+    	for (int i = 0; i < termIDs.length; i++) {
+    		PostingsCursor cursor = tier < 0 ? getCursor(termIDs[i]) : getChampionCursor(tier, termIDs[i]);
+    		int current = -1;
+    		for (int docID : docIDs) {
+    			if (current < docID) {
+    				if (!cursor.skipTo(docID)) {
+    					break;
+    				}
+    				current = cursor.docID();
+    			}
+    			if (current == docID) {
+    				tfIdfScores.put(key(termIDs[i], docID), weights[i] * tfScore(cursor.tf(), docID));
+    			}
+    		}
+    	}
+    }
+    
+    private double idf(int df) {
+    	return Math.log((double)numDocuments / (double)df);
+    }
+    
+    /**
+     *  Returns the number of documents containing termID.
+     */
+    protected int getDf(int termID) {
+    	PostingsList list = getPostings(termID);
+    	return list == null ? 0 : list.size();
+    }
+    
+    /**
+     *  Returns a cursor over the postings of termID in the given
+     *  champion tier, see getChampions().
+     */
+    protected PostingsCursor getChampionCursor(int tier, int termID) {
+    	return getChampions(tier, termID).cursor();
+    }
+    
+    /**
+     *  Returns the postings of termID in the given champion tier, sorted
+     *  by docID like the full postings, computing them if the term has
+     *  changed since computeChampions().
+     */
+    protected PostingsList getChampions(int tier, int termID) {
+    	float[] norms = getNorms();
+    	if (termID >= champions[tier].length) {
+    		champions[tier] = Arrays.copyOf(champions[tier], index.length);
+    	}
+    	if (champions[tier][termID] == null) {
+    		champions[tier][termID] = champions(index[termID], CHAMPION_TIERS[tier], norms);
+    	}
+    	return champions[tier][termID];
+    }
+    
+    /**
+     *  Computes the champion tiers of every term. Called when indexing
+     *  is done.
+     */
+    public void computeChampions() {
+    	getNorms();
+    	// which resets the tiers if the norms have changed.
+    	for (int t = 0; t < CHAMPION_TIERS.length; t++) {
+    		champions[t] = new PostingsList[index.length];
+    		for (int i = 0; i < numTerms; i++) {
+    			getChampions(t, termIDs[i]);
+    		}
+    	}
+    }
+    
+    /**
+     *  Returns the r postings of list with the highest tfScore(), ties
+     *  broken by lower docID, in docID order. Returns list itself if it
+     *  has at most r postings.
+     */
+    static PostingsList champions(PostingsList list, int r, float[] norms) {
+    	if (list.size() <= r) {
+    		return list;
+    	}
+    	TopK top = new TopK(r);
+    	PostingsList.Cursor entry = list.cursor();
+    	while (entry.next()) {
+    		top.offer(entry.docID(), tfScore(entry.tf(), entry.docID(), norms));
+    	}
+    	PostingsList best = top.toPostingsList();
+    	int[] docIDs = new int[best.size()];
+    	for (int i = 0; i < docIDs.length; i++) {
+    		docIDs[i] = best.getDocID(i);
+    	}
+    	Arrays.sort(docIDs);
+    	PostingsList result = new PostingsList();
+    	int p = 0;
+    	for (int docID : docIDs) {
+    		p = list.advance(p, docID);
+    		for (int k = 0; k < list.getTf(p); k++) {
+    			result.insert(docID, list.getPosition(p, k), 1.0);
+    		}
+    	}
+    	return result;
+    }
+    
+    /**
+     *  Returns the part of the tf-idf score that depends on the document,
+     *  the (1 + log tf) weight divided by the norm of the document, which
+     *  makes the score the cosine similarity (up to the query norm).
+     */
+    double tfScore(int tf, int docID) {
+    	return tfScore(tf, docID, getNorms());
+    }
+    
+    static double tfScore(int tf, int docID, float[] norms) {
+    	return docID < norms.length && norms[docID] > 0 ? (1 + Math.log(tf)) / norms[docID] : 0;
+    }
+    
+    /**
+     *  Returns the highest tfScore() in list, rounded up to a float.
+     */
+    static float maxTfScore(PostingsList list, float[] norms) {
+    	double max = 0;
+    	PostingsList.Cursor entry = list.cursor();
+    	while (entry.next()) {
+    		max = Math.max(max, tfScore(entry.tf(), entry.docID(), norms));
+    	}
+    	return Math.nextUp((float) max);
+    }
+    
+    /**
+     *  Returns the norms of the documents, computing them if the index
+     *  has changed since they were last computed.
+     */
+    protected float[] getNorms() {
+    	if (norms == null) {
+    		double[] sums = new double[numDocuments];
+    		for (int i = 0; i < numTerms; i++) {
+    			sums = addSquaredWeights(sums, index[termIDs[i]], numDocuments);
+    		}
+    		norms = norms(sums);
+    		maxTfScores = new float[0];
+    		champions = new PostingsList[CHAMPION_TIERS.length][0];
+    		// the upper bounds and the tiers depend on the norms.
+    	}
+    	return norms;
+    }
+    
+    /**
+     *  Adds the squared tf-idf weights, (1 + log tf) * idf, of the
+     *  postings in list to the squared norms of their documents.
+     *
+     *  @return sums, or a copy grown to fit the docIDs of list.
+     */
+    static double[] addSquaredWeights(double[] sums, PostingsList list, int numDocuments) {
+    	double idf = Math.log((double)numDocuments / (double)list.size());
+    	PostingsList.Cursor entry = list.cursor();
+    	while (entry.next()) {
+    		int docID = entry.docID();
+    		if (docID >= sums.length) {
+    			sums = Arrays.copyOf(sums, Math.max(docID + 1, 2 * sums.length));
+    		}
+    		double weight = (1 + Math.log(entry.tf())) * idf;
+    		sums[docID] += weight * weight;
+    	}
+    	return sums;
+    }
+    
+    /**
+     *  Returns the square roots of the squared norms.
+     */
+    static float[] norms(double[] sums) {
+    	float[] norms = new float[sums.length];
+    	for (int i = 0; i < sums.length; i++) {
+    		norms[i] = (float) Math.sqrt(sums[i]);
+    	}
+    	return norms;
+    }
+    
+    /**
+     *  Computes the highest tfScore() of every term, the upper bounds
+     *  used by MaxScore. Called when indexing is done.
+     */
+    public void computeMaxTfScores() {
+    	float[] norms = getNorms();
+    	maxTfScores = new float[index.length];
+    	for (int i = 0; i < numTerms; i++) {
+    		maxTfScores[termIDs[i]] = maxTfScore(index[termIDs[i]], norms);
+    	}
+    }
+    
+    /**
+     *  Returns the highest tfScore() of termID, computing it if the term
+     *  has changed since computeMaxTfScores().
+     */
+    protected double getMaxTfScore(int termID) {
+    	float[] norms = getNorms();
+    	if (termID >= maxTfScores.length) {
+    		maxTfScores = Arrays.copyOf(maxTfScores, index.length);
+    	}
+    	if (maxTfScores[termID] == 0) {
+    		maxTfScores[termID] = maxTfScore(index[termID], norms);
+    	}
+    	return maxTfScores[termID];
+    }
+    
+    /**
+     *  Returns cursors over the postings of the query terms, in query
+     *  order, or null if a term is not in the index (or there are no
+     *  terms), in which case no document contains all of them.
+     */
+    private PostingsCursor[] getCursors(Query query) {
+    	if (query.terms.size() == 0) {
+    		return null;
+    	}
+    	PostingsCursor[] cursors = new PostingsCursor[query.terms.size()];
+    	for (int i = 0; i < cursors.length; i++) {
+    		int termID = this.getTermID(query.terms.get(i));
+    		cursors[i] = termID < 0 ? null : this.getCursor(termID);
+    		if (cursors[i] == null) {
+    			return null;
+    		}
+    	}
+    	return cursors;
+    }
+    
     public void setNumDocuments() {
     	// increase the number by 1.
     	this.numDocuments++;
@@ -251,17 +781,27 @@ public class HashedIndex implements Index {
      *  *** actually this method is needed in task 1.6 ***
      */
     public void cleanup() {
-    	index.clear();
+    	index = new PostingsList[INITIAL_CAPACITY];
+    	termIDs = new int[INITIAL_CAPACITY];
+    	numTerms = 0;
+    	norms = null;
+    	maxTfScores = new float[0];
+    	champions = new PostingsList[CHAMPION_TIERS.length][0];
+    	tfIdfScores.clear();
+    	memory = 0;
     }
     
     public double getTfIdfScore(String token, int docID) {
-    	HashMap<Integer, Double> scores = tfIdfScores.get(token);
-    	
-    	if (!scores.containsKey(docID)) {
-    		return 0;
-    	} else {
-    		return scores.get(docID);
-    	}
+    	int termID = getTermID(token);
+    	Double score = termID < 0 ? null : tfIdfScores.get(key(termID, docID));
+    	return score == null ? 0 : score;
+    }
+    
+    /**
+     *  Packs a termID and a docID into one key.
+     */
+    static long key(int foo, int bar) {
+    	return ((long) foo << 32) | (bar & 0xFFFFFFFFL);
     }
     
 }
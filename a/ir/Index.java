@@ -9,18 +9,19 @@
 
 package ir;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 public interface Index {
 
     /* Index types */
     public static final int HASHED_INDEX = 0;
+    public static final int DISK_INDEX = 1;
 
     /* Query types */
     public static final int INTERSECTION_QUERY = 0;
     public static final int PHRASE_QUERY = 1;
     public static final int RANKED_QUERY = 2;
+    public static final int PROXIMITY_QUERY = 3;
 	
     /* Ranking types */
     public static final int TF_IDF = 0; 
@@ -32,17 +33,16 @@ public interface Index {
     public static final int BIGRAM = 1; 
     public static final int SUBPHRASE = 2; 
 	
-    public HashMap<String, String> docIDs = new HashMap<String,String>();
-    public HashMap<String, Integer> docLengths = new HashMap<String,Integer>();
-
     public void insert(String token, int docID, int offset);
     public Iterator<String> getDictionary();
     public PostingsList getPostings( String token );
     public PostingsList search( Query query, int queryType, int rankingType, int structureType );
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k );
     public void cleanup();
     public void writeFile();
     public void setNumDocuments();
     public int getNumDocuments();
+    public DocumentStore getDocuments();
     public double getTfIdfScore(String term, int docID);
 
 }
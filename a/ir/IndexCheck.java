@@ -0,0 +1,277 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * checks of the index against simpler ways of computing the same.
+ * run with: java ir.IndexCheck [directory to index]
+ */
+
+package ir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+
+/**
+ *   Runs checks of the index: each check computes something in a
+ *   simpler way and compares it with the index. A failed check throws a
+ *   RuntimeException, so the run stops with the first difference.
+ */
+public class IndexCheck {
+
+    /** The seed of the random data, so that a failure can be repeated. */
+    private static final long SEED = 2476;
+
+    /**
+     *  Encodes random postings lists with PostingsCodec, and checks that
+     *  decode() and a Cursor moved by next() and skipTo() give back the
+     *  same docIDs, tfs and positions, also across the blocks.
+     */
+    static void checkCodec(Random random) {
+    	int checked = 0;
+    	for (int it = 0; it < 300; it++) {
+    		PostingsList list = new PostingsList();
+    		int n = random.nextInt(1000);
+    		int docID = 0;
+    		for (int i = 0; i < n; i++) {
+    			docID += 1 + random.nextInt(it % 3 == 0 ? 3 : 50);
+    			int tf = 1 + random.nextInt(4);
+    			int offset = 0;
+    			for (int k = 0; k < tf; k++) {
+    				offset += 1 + random.nextInt(20);
+    				list.insert(docID, offset, 1.0);
+    			}
+    		}
+    		// dense and sparse lists, one to several blocks.
+    		byte[] bytes = PostingsCodec.encode(list);
+    		PostingsList decoded = PostingsCodec.decode(ByteBuffer.wrap(bytes), list.size());
+    		check(decoded.size() == list.size(), "decoded size " + decoded.size() + " != " + list.size());
+    		for (int i = 0; i < list.size(); i++) {
+    			check(decoded.getDocID(i) == list.getDocID(i) && decoded.getTf(i) == list.getTf(i),
+    					"decoded posting " + i + " of list " + it);
+    			for (int k = 0; k < list.getTf(i); k++) {
+    				check(decoded.getPosition(i, k) == list.getPosition(i, k), "decoded position of list " + it);
+    			}
+    		}
+
+    		PostingsCodec.Cursor cursor = new PostingsCodec.Cursor(ByteBuffer.wrap(bytes), list.size());
+    		check(cursor.size() == list.size(), "cursor size " + cursor.size() + " != " + list.size());
+    		int i = -1;
+    		int current = -1;
+    		while (true) {
+    			boolean found;
+    			if (random.nextInt(3) == 0) {
+    				int target = current + 1 + random.nextInt(2000);
+    				found = cursor.skipTo(target);
+    				i++;
+    				while (i < list.size() && list.getDocID(i) < target) {
+    					i++;
+    				}
+    			} else {
+    				found = cursor.next();
+    				i++;
+    			}
+    			check(found == i < list.size(), "cursor end of list " + it);
+    			if (!found) {
+    				break;
+    			}
+    			current = cursor.docID();
+    			check(current == list.getDocID(i) && cursor.tf() == list.getTf(i), "cursor posting " + i + " of list " + it);
+    			for (int k = 0; k < cursor.tf(); k++) {
+    				check(cursor.position(k) == list.getPosition(i, k), "cursor position of list " + it);
+    			}
+    			checked++;
+    		}
+    		check(!cursor.next() && !cursor.skipTo(0), "cursor after the end of list " + it);
+    	}
+    	System.err.println("codec: ok, " + checked + " postings");
+    }
+
+    /**
+     *  Indexes corpus serially and with several threads, and checks that
+     *  both give the same docIDs to the same files and the same
+     *  postings. Returns the index made by the threads.
+     */
+    static HashedIndex checkParallel(File corpus) {
+    	Indexer serial = index(corpus, 1);
+    	Indexer parallel = index(corpus, 4);
+    	DocumentStore foo = serial.index.getDocuments();
+    	DocumentStore bar = parallel.index.getDocuments();
+    	check(foo.size() == bar.size(), "documents " + foo.size() + " != " + bar.size());
+    	for (int docID = 0; docID < foo.size(); docID++) {
+    		check(foo.getPath(docID).equals(bar.getPath(docID)), "path of docID " + docID + ": "
+    				+ foo.getPath(docID) + " != " + bar.getPath(docID));
+    		check(foo.getLength(docID) == bar.getLength(docID), "length of docID " + docID);
+    	}
+
+    	int numTerms = 0;
+    	for (Iterator<String> it = serial.index.getDictionary(); it.hasNext(); ) {
+    		String token = it.next();
+    		PostingsList listFoo = serial.index.getPostings(token);
+    		PostingsList listBar = parallel.index.getPostings(token);
+    		check(listBar != null && listBar.size() == listFoo.size(), "postings of " + token);
+    		for (int i = 0; i < listFoo.size(); i++) {
+    			check(listFoo.getDocID(i) == listBar.getDocID(i) && listFoo.getTf(i) == listBar.getTf(i),
+    					"posting " + i + " of " + token);
+    			for (int k = 0; k < listFoo.getTf(i); k++) {
+    				check(listFoo.getPosition(i, k) == listBar.getPosition(i, k), "position of " + token);
+    			}
+    		}
+    		numTerms++;
+    	}
+    	int numTermsBar = 0;
+    	for (Iterator<String> it = parallel.index.getDictionary(); it.hasNext(); it.next()) {
+    		numTermsBar++;
+    	}
+    	check(numTerms == numTermsBar, "terms " + numTerms + " != " + numTermsBar);
+    	System.err.println("parallel: ok, " + foo.size() + " documents, " + numTerms + " terms");
+    	return (HashedIndex) parallel.index;
+    }
+
+    /**
+     *  Runs random ranked tf-idf queries on index, which finds the top k
+     *  with MaxScore, and checks that the results have the same scores
+     *  as the k best of scoring every posting of the query terms.
+     */
+    static void checkMaxScore(HashedIndex index, Random random) {
+    	int n = index.getNumDocuments();
+    	PrintStream out = System.out;
+    	System.setOut(new PrintStream(new OutputStream() {
+    		public void write(int b) { }
+    	}));
+    	// the search prints its time for every query.
+    	try {
+    		for (int it = 0; it < 300; it++) {
+    			Query query = new Query();
+    			int numTerms = 1 + random.nextInt(6);
+    			for (int i = 0; i < numTerms; i++) {
+    				query.terms.add("w" + (int) Math.abs(random.nextGaussian() * (it % 2 == 0 ? 10 : 200)));
+    				query.weights.add(random.nextInt(3) == 0 ? random.nextDouble() : 1.0);
+    			}
+    			int k = 1 + random.nextInt(30);
+    			PostingsList list = index.search(query, Index.RANKED_QUERY, Index.TF_IDF, Index.UNIGRAM, k);
+
+    			final double[] scores = new double[n];
+    			boolean[] matched = new boolean[n];
+    			int numMatched = 0;
+    			for (int i = 0; i < numTerms; i++) {
+    				int termID = index.getTermID(query.terms.get(i));
+    				int df = termID < 0 ? 0 : index.getDf(termID);
+    				if (df == 0) {
+    					continue;
+    				}
+    				double idf = Math.log((double) n / df);
+    				double weight = query.weights.get(i) * idf * idf;
+    				PostingsCursor cursor = index.getCursor(termID);
+    				while (cursor.next()) {
+    					scores[cursor.docID()] += weight * index.tfScore(cursor.tf(), cursor.docID());
+    					if (!matched[cursor.docID()]) {
+    						matched[cursor.docID()] = true;
+    						numMatched++;
+    					}
+    				}
+    			}
+    			Integer[] docIDs = new Integer[numMatched];
+    			for (int docID = 0, m = 0; docID < n; docID++) {
+    				if (matched[docID]) {
+    					docIDs[m++] = docID;
+    				}
+    			}
+    			Arrays.sort(docIDs, new Comparator<Integer>() {
+    				public int compare(Integer foo, Integer bar) {
+    					return Double.compare(scores[bar], scores[foo]);
+    				}
+    			});
+    			// every posting scored, best first.
+
+    			check(list.size() == Math.min(k, numMatched), "size " + list.size() + " of query " + it);
+    			for (int i = 0; i < list.size(); i++) {
+    				double expected = scores[docIDs[i]];
+    				check(Math.abs(list.getScore(i) - expected) <= 1e-9 * Math.abs(expected),
+    						"score " + list.getScore(i) + " != " + expected + " at " + i + " of query " + it);
+    				check(Math.abs(scores[list.getDocID(i)] - expected) <= 1e-9 * Math.abs(expected),
+    						"docID " + list.getDocID(i) + " at " + i + " of query " + it);
+    			}
+    			// documents with equal scores may come in any order.
+    		}
+    	} finally {
+    		System.setOut(out);
+    	}
+    	System.err.println("maxscore: ok, 300 queries");
+    }
+
+    /**
+     *  Indexes corpus in memory with numThreads threads.
+     */
+    private static Indexer index(File corpus, int numThreads) {
+    	Indexer indexer = new Indexer();
+    	indexer.memoryBudget = 0;
+    	indexer.numThreads = numThreads;
+    	indexer.processFiles(corpus);
+    	indexer.synchronize();
+    	return indexer;
+    }
+
+    /**
+     *  Writes numFiles files of random words to subdirectories of a new
+     *  temporary directory, which is deleted on exit. A few words are
+     *  frequent and most are rare, as in text.
+     */
+    static File writeCorpus(Random random, int numFiles) throws IOException {
+    	File dir = File.createTempFile("corpus", "");
+    	dir.delete();
+    	dir.mkdir();
+    	dir.deleteOnExit();
+    	for (int i = 0; i < numFiles; i++) {
+    		File subdir = new File(dir, "d" + i % 7);
+    		if (subdir.mkdir()) {
+    			subdir.deleteOnExit();
+    		}
+    		File file = new File(subdir, i + ".txt");
+    		file.deleteOnExit();
+    		Writer out = new FileWriter(file);
+    		try {
+    			int length = 20 + random.nextInt(300);
+    			for (int k = 0; k < length; k++) {
+    				out.write("w" + (int) Math.abs(random.nextGaussian() * (k % 2 == 0 ? 10 : 200)) + " ");
+    			}
+    		} finally {
+    			out.close();
+    		}
+    	}
+    	// the files are deleted before their directories.
+    	return dir;
+    }
+
+    /**
+     *  Throws a RuntimeException with message if ok is false.
+     */
+    private static void check(boolean ok, String message) {
+    	if (!ok) {
+    		throw new RuntimeException("IndexCheck failed: " + message);
+    	}
+    }
+
+    public static void main(String[] args) throws IOException {
+    	Random random = new Random(SEED);
+    	checkCodec(random);
+    	File corpus = args.length > 0 ? new File(args[0]) : writeCorpus(random, 500);
+    	HashedIndex index = checkParallel(corpus);
+    	checkMaxScore(index, random);
+    }
+
+}
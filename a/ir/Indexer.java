@@ -17,7 +17,14 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.pdfparser.*;
 import org.apache.pdfbox.util.PDFTextStripper;
@@ -32,10 +39,48 @@ public class Indexer {
     /** The index to be built up by this indexer. */
     public Index index;
     public Index indexBiword;
+
+    /**
+     *  The indexes in memory the files are indexed into. They are the
+     *  index and indexBiword until these are moved to disk, and null
+     *  after, when no more files can be indexed.
+     */
+    private HashedIndex memoryIndex;
+    private BiwordIndex memoryIndexBiword;
+
+    /** The terms seen so far, shared by all the indexing threads. */
+    public TermDictionary terms = new TermDictionary();
+    
+    /** The paths and lengths of the documents, shared by both indexes. */
+    public DocumentStore documents = new DocumentStore();
     
     /** The next docID to be generated. */
     private int lastDocID = 0;
 
+    /**
+     *  The heap bytes the postings may take before they are flushed to
+     *  a segment on disk, or 0 for keeping the whole index in memory.
+     */
+    public long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+    /** The number of segments flushed to disk. */
+    private int numSegments = 0;
+
+    /** The prefix of the segment directories in the index directory. */
+    private static final String SEGMENT_DIR = "segment";
+
+    /** The number of threads indexing the files, 1 for indexing serially. */
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of files indexed together by a thread. */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     *  Incremented whenever the indexes change, so that results of
+     *  searches made before can be told from the new ones.
+     */
+    public volatile long generation = 0;
+
 
     /* ----------------------------------------------- */
 
@@ -58,8 +103,20 @@ public class Indexer {
      * Initializes the index as a HashedIndex.
      */
     public Indexer() {
-    	index = new HashedIndex();
-    	indexBiword = new BiwordIndex();
+    	memoryIndex = new HashedIndex(terms, documents);
+    	memoryIndexBiword = new BiwordIndex(terms, documents);
+    	index = memoryIndex;
+    	indexBiword = memoryIndexBiword;
+    }
+
+    /**
+     *  Throws an IllegalStateException if the indexes are on disk, where
+     *  they are read-only.
+     */
+    private void checkInMemory() {
+    	if (memoryIndex == null) {
+    		throw new IllegalStateException("The index is on disk and cannot be changed");
+    	}
     }
 
     /* ----------------------------------------------- */
@@ -69,7 +126,13 @@ public class Indexer {
      *  Tokenizes and indexes the file @code{f}. If @code{f} is a directory,
      *  all its files and subdirectories are recursively processed.
      */
-    public void processFiles(File f, boolean isWriteMode, boolean isIndexEmpty) {
+    public void processFiles(File f) {
+	checkInMemory();
+	generation++;
+	if ( numThreads > 1 ) {
+	    processFilesParallel( f );
+	    return;
+	}
 	// do not try to index fs that cannot be read
 	if ( f.canRead() ) {
 	    if ( f.isDirectory() ) {
@@ -77,62 +140,220 @@ public class Indexer {
 		// an IO error could occur
 		if ( fs != null ) {
 		    for ( int i=0; i<fs.length; i++ ) {
-			processFiles(new File(f, fs[i]), isWriteMode, isIndexEmpty);
+			processFiles(new File(f, fs[i]));
 		    }
 		}
 	    } else {
 		// First register the document and get a docID
 		int docID = generateDocID();
-		index.docIDs.put("" + docID, f.getPath());
-		indexBiword.docIDs.put("" + docID, f.getPath());
+		documents.add(docID, f.getPath());
 		
 		// increase the number of documents by 1.
-		index.setNumDocuments();
+		memoryIndex.setNumDocuments();
+		memoryIndexBiword.setNumDocuments();
 		
-		// when the index directory is empty, write to the index
-		// otherwise, skip this step.
-		if (true/*isIndexEmpty*/) {
-			try {
-			    //  Read the first few bytes of the file to see if it is 
-			    // likely to be a PDF 
-			    Reader reader = new FileReader( f );
-			    char[] buf = new char[4];
-			    reader.read( buf, 0, 4 );
-			    if ( buf[0] == '%' && buf[1]=='P' && buf[2]=='D' && buf[3]=='F' ) {
-					// We assume this is a PDF file
-					try {
-					    String contents = extractPDFContents( f );
-					    reader = new StringReader( contents );
-					}
-					catch ( IOException e ) {
-					    // Perhaps it wasn't a PDF file after all
-					    reader = new FileReader( f );
-					}
-			    }
-			    else {
-			    	// We hope this is ordinary text
-			    	reader = new FileReader( f );
-			    }
-			    SimpleTokenizer tok = new SimpleTokenizer( reader );
-			    int offset = 0;
-			    while ( tok.hasMoreTokens() ) {
-			    	String token = tok.nextToken();
-			    	insertIntoIndex( docID, token, offset++ );
-			    }
-			    index.docLengths.put("" + docID, offset);
-			    indexBiword.docLengths.put("" + docID, offset);
-			    reader.close();
-			    // above is the version for task 1.1~5.
-			    // for task 1.6, the implementation is found below.
-				/*if (isWriteMode) {    
-					index.writeFile();
-				    index.cleanup();
-				}*/
-			} catch ( IOException e ) {
-			    e.printStackTrace();
-			}
+		try {
+		    int offset = tokenize( f, docID, memoryIndex, memoryIndexBiword );
+		    documents.setLength(docID, offset);
+		    if (memoryBudget > 0 && estimateMemory() > memoryBudget) {
+		    	flushSegment();
+		    }
+		    // flush between documents when the postings outgrow the budget.
+		} catch ( IOException e ) {
+		    e.printStackTrace();
+		}
+	    }
+	}
+    }
+
+
+    /**
+     *  Tokenizes the file @code{f} into the two given indexes as the
+     *  document docID.
+     *
+     *  @return the number of tokens in the document.
+     */
+    private int tokenize( File f, int docID, HashedIndex index, BiwordIndex indexBiword ) throws IOException {
+	//  Read the first few bytes of the file to see if it is 
+	// likely to be a PDF 
+	Reader reader = new FileReader( f );
+	char[] buf = new char[4];
+	reader.read( buf, 0, 4 );
+	reader.close();
+	if ( buf[0] == '%' && buf[1]=='P' && buf[2]=='D' && buf[3]=='F' ) {
+	    // We assume this is a PDF file
+	    try {
+		String contents = extractPDFContents( f );
+		reader = new StringReader( contents );
+	    }
+	    catch ( IOException e ) {
+		// Perhaps it wasn't a PDF file after all
+		reader = new FileReader( f );
+	    }
+	}
+	else {
+	    // We hope this is ordinary text
+	    reader = new FileReader( f );
+	}
+	SimpleTokenizer tok = new SimpleTokenizer( reader );
+	int offset = 0;
+	while ( tok.nextSpan() ) {
+	    int termID = terms.add( tok.buffer(), tok.spanStart(), tok.spanLength() );
+	    index.insert( termID, docID, offset );
+	    indexBiword.insert( termID, docID, offset );
+	    offset++;
+	}
+	reader.close();
+	return offset;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Indexes the file @code{f} like processFiles(), with numThreads
+     *  threads. The directories are listed in parallel, and the files
+     *  are cut into batches of BATCH_SIZE files, which are read,
+     *  tokenized and indexed into partial indexes by the pool. The
+     *  partial indexes are merged into the index in batch order while
+     *  the next batches run.
+     *
+     *  The docIDs are given in the order processFiles() would visit the
+     *  files, so they do not depend on the number of threads, and the
+     *  postings of a batch can be appended to the index.
+     */
+    private void processFilesParallel( File f ) {
+	ForkJoinPool pool = new ForkJoinPool( numThreads );
+	try {
+	    List<File> files = pool.invoke( new ListTask( f ));
+	    LinkedList<Future<Batch>> batches = new LinkedList<Future<Batch>>();
+	    for ( int start=0; start<files.size(); start+=BATCH_SIZE ) {
+		List<File> batch = files.subList( start, Math.min( start+BATCH_SIZE, files.size() ));
+		int firstDocID = lastDocID;
+		lastDocID += batch.size();
+		batches.add( pool.submit( new Batch( batch, firstDocID )));
+		if ( batches.size() > 2 * numThreads ) {
+		    merge( batches.removeFirst().get() );
 		}
+		// bound the number of partial indexes waiting to be merged.
+	    }
+	    while ( !batches.isEmpty() ) {
+		merge( batches.removeFirst().get() );
 	    }
+	} catch ( InterruptedException e ) {
+	    Thread.currentThread().interrupt();
+	} catch ( ExecutionException e ) {
+	    e.printStackTrace();
+	} catch ( IOException e ) {
+	    e.printStackTrace();
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+
+    /**
+     *  Registers the documents of a batch and appends its partial
+     *  indexes to the indexes.
+     */
+    private void merge( Batch batch ) throws IOException {
+	for ( int i=0; i<batch.files.size(); i++ ) {
+	    int docID = batch.firstDocID + i;
+	    String path = batch.files.get( i ).getPath();
+	    documents.add(docID, path);
+	    memoryIndex.setNumDocuments();
+	    memoryIndexBiword.setNumDocuments();
+	    if ( batch.lengths[i] >= 0 ) {
+		documents.setLength(docID, batch.lengths[i]);
+	    }
+	}
+	memoryIndex.merge( batch.index );
+	memoryIndexBiword.merge( batch.indexBiword );
+	if (memoryBudget > 0 && estimateMemory() > memoryBudget) {
+	    flushSegment();
+	}
+    }
+
+
+    /**
+     *  Lists the readable files under a file, in the order processFiles()
+     *  visits them. The subdirectories are listed by forked tasks.
+     */
+    private static class ListTask extends RecursiveTask<List<File>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private File f;
+
+	ListTask( File f ) {
+	    this.f = f;
+	}
+
+	protected List<File> compute() {
+	    ArrayList<File> files = new ArrayList<File>();
+	    if ( !f.canRead() ) {
+		return files;
+	    }
+	    if ( !f.isDirectory() ) {
+		files.add( f );
+		return files;
+	    }
+	    String[] fs = f.list();
+	    if ( fs == null ) {
+		return files;
+	    }
+	    ListTask[] tasks = new ListTask[fs.length];
+	    for ( int i=0; i<fs.length; i++ ) {
+		File child = new File( f, fs[i] );
+		if ( child.isDirectory() ) {
+		    tasks[i] = new ListTask( child );
+		    tasks[i].fork();
+		}
+	    }
+	    for ( int i=0; i<fs.length; i++ ) {
+		if ( tasks[i] != null ) {
+		    files.addAll( tasks[i].join() );
+		}
+		else if ( new File( f, fs[i] ).canRead() ) {
+		    files.add( new File( f, fs[i] ));
+		}
+	    }
+	    return files;
+	}
+    }
+
+
+    /**
+     *  Indexes a batch of files with consecutive docIDs into its own
+     *  partial indexes.
+     */
+    private class Batch implements Callable<Batch> {
+
+	private List<File> files;
+	private int firstDocID;
+	private HashedIndex index = new HashedIndex( terms );
+	private BiwordIndex indexBiword = new BiwordIndex( terms );
+
+	/** The number of tokens of each file, or -1 if it could not be read. */
+	private int[] lengths;
+
+	Batch( List<File> files, int firstDocID ) {
+	    this.files = files;
+	    this.firstDocID = firstDocID;
+	    lengths = new int[files.size()];
+	}
+
+	public Batch call() {
+	    for ( int i=0; i<files.size(); i++ ) {
+		try {
+		    lengths[i] = tokenize( files.get( i ), firstDocID + i, index, indexBiword );
+		} catch ( IOException e ) {
+		    e.printStackTrace();
+		    lengths[i] = -1;
+		}
+	    }
+	    return this;
 	}
     }
 
@@ -159,12 +380,154 @@ public class Indexer {
     /* ----------------------------------------------- */
 
 
+    /**
+     *  Returns the estimated heap bytes of the postings of both indexes.
+     */
+    private long estimateMemory() {
+    	return memoryIndex.estimateMemory() + memoryIndexBiword.estimateMemory();
+    }
+
+    /**
+     *  Writes the postings in memory to a new segment on disk, sorted by
+     *  term, and clears them. The biword index goes to a subdirectory.
+     */
+    private void flushSegment() throws IOException {
+    	File dir = new File(DiskIndex.INDEX_DIR, SEGMENT_DIR + numSegments++);
+    	memoryIndex.writeFile(dir, false);
+    	memoryIndexBiword.writeFile(new File(dir, DiskBiwordIndex.BIWORD_DIR));
+    	memoryIndex.cleanup();
+    	memoryIndexBiword.cleanup();
+    }
+
+    /**
+     *  Merges the flushed segments into the index on disk, if the index
+     *  did not fit in the memory budget, or else computes the upper
+     *  bounds and the champion tiers of the ranked search. Called when
+     *  indexing is done.
+     */
+    public void synchronize() {
+    	generation++;
+    	if (numSegments > 0) {
+    		moveIndexToDisk();
+    	} else if (memoryIndex != null) {
+    		memoryIndex.computeMaxTfScores();
+    		memoryIndex.computeChampions();
+    	}
+    	// the disk index has them in its dictionary and tiers.
+    }
+
+    /**
+     *  Flushes the postings in memory as the last segment, merges all
+     *  the segments into the index directory and replaces both indexes
+     *  by disk indexes reading the postings from there, so the postings
+     *  no longer take heap. Nothing is done if the indexes are already
+     *  on disk.
+     */
+    public void moveIndexToDisk() {
+    	if (memoryIndex == null) {
+    		return;
+    	}
+    	generation++;
+    	try {
+    		flushSegment();
+    		File dir = new File(DiskIndex.INDEX_DIR);
+    		File[] segments = new File[numSegments];
+    		File[] biwordSegments = new File[numSegments];
+    		for (int i = 0; i < numSegments; i++) {
+    			segments[i] = new File(dir, SEGMENT_DIR + i);
+    			biwordSegments[i] = new File(segments[i], DiskBiwordIndex.BIWORD_DIR);
+    		}
+    		File biwordDir = new File(dir, DiskBiwordIndex.BIWORD_DIR);
+    		DiskIndex.merge(segments, dir, memoryIndex.getNumDocuments(), true);
+    		DiskIndex.merge(biwordSegments, biwordDir, memoryIndex.getNumDocuments(), false);
+    		for (File segment : segments) {
+    			delete(segment);
+    		}
+    		numSegments = 0;
+    		documents.writeFile(new File(dir, DocumentStore.DOCUMENTS_FILE));
+    		index = new DiskIndex(dir);
+    		documents = index.getDocuments();
+    		indexBiword = new DiskBiwordIndex(biwordDir, documents);
+    		memoryIndex = null;
+    		memoryIndexBiword = null;
+    		terms = new TermDictionary();
+    		// the disk indexes have their own dictionaries, and the
+    		// documents are mapped from the index directory.
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+
+    /**
+     *  Saves the indexes in memory to DiskIndex.INDEX_DIR, as
+     *  moveIndexToDisk() does: the index with its champion tiers, the
+     *  documents and the biword index. Indexes already on disk are not
+     *  written again.
+     */
+    public void writeFile() {
+    	if (memoryIndex == null) {
+    		return;
+    	}
+    	memoryIndex.writeFile();
+    	memoryIndexBiword.writeFile();
+    }
+
+    /**
+     *  Opens the indexes saved in DiskIndex.INDEX_DIR, by moveIndexToDisk()
+     *  or writeFile() of an earlier run, instead of indexing the files
+     *  again. The indexes are then read-only, as after moveIndexToDisk().
+     *
+     *  @return true if there was a saved index and it was opened.
+     */
+    public boolean openIndex() {
+    	File dir = new File(DiskIndex.INDEX_DIR);
+    	File biwordDir = new File(dir, DiskBiwordIndex.BIWORD_DIR);
+    	if (!new File(dir, DiskIndex.DICTIONARY_FILE).isFile()
+    			|| !new File(dir, DocumentStore.DOCUMENTS_FILE).isFile()
+    			|| !new File(biwordDir, DiskIndex.DICTIONARY_FILE).isFile()) {
+    		return false;
+    	}
+    	// a partly saved index is indexed again.
+    	try {
+    		Index diskIndex = new DiskIndex(dir);
+    		indexBiword = new DiskBiwordIndex(biwordDir, diskIndex.getDocuments());
+    		index = diskIndex;
+    		documents = index.getDocuments();
+    		memoryIndex = null;
+    		memoryIndexBiword = null;
+    		terms = new TermDictionary();
+    		generation++;
+    		return true;
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		return false;
+    	}
+    }
+
+    /**
+     *  Deletes a file, or a directory with all its contents.
+     */
+    private void delete(File f) {
+    	File[] fs = f.listFiles();
+    	if (fs != null) {
+    		for (File file : fs) {
+    			delete(file);
+    		}
+    	}
+    	f.delete();
+    }
+
+
+    /* ----------------------------------------------- */
+
+
     /**
      *  Indexes one token.
      */
     public void insertIntoIndex( int docID, String token, int offset ) {
-    	index.insert(token, docID, offset);
-    	indexBiword.insert(token, docID, offset);
+    	checkInMemory();
+    	memoryIndex.insert(token, docID, offset);
+    	memoryIndexBiword.insert(token, docID, offset);
     }
 }
 	
@@ -0,0 +1,129 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * a hash map with primitive long keys.
+ * used for the bigrams, keyed by the two termIDs.
+ */
+
+package ir;
+
+
+/**
+ *   Maps long keys to values with open addressing, so an entry costs a
+ *   slot in two arrays instead of a boxed key and an entry object.
+ *   The values must not be null, null marks an empty slot.
+ */
+public class LongMap<V> {
+
+    /** The initial number of slots, a power of two. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     *  Returns the value of key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+    	int mask = keys.length - 1;
+    	for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+    		if (keys[i] == key) {
+    			return (V) values[i];
+    		}
+    	}
+    	return null;
+    }
+
+    /**
+     *  Sets the value of key, and returns the previous one or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+    	if (value == null) {
+    		throw new IllegalArgumentException("null value");
+    	}
+    	if (2 * (size + 1) > keys.length) {
+    		grow();
+    	}
+    	// at most half of the slots are used.
+    	int mask = keys.length - 1;
+    	int i = hash(key) & mask;
+    	while (values[i] != null) {
+    		if (keys[i] == key) {
+    			V old = (V) values[i];
+    			values[i] = value;
+    			return old;
+    		}
+    		i = (i + 1) & mask;
+    	}
+    	keys[i] = key;
+    	values[i] = value;
+    	size++;
+    	return null;
+    }
+
+    /**
+     *  Returns the number of keys.
+     */
+    public int size() {
+    	return size;
+    }
+
+    /**
+     *  Returns all the keys, in no particular order.
+     */
+    public long[] keys() {
+    	long[] result = new long[size];
+    	int n = 0;
+    	for (int i = 0; i < keys.length; i++) {
+    		if (values[i] != null) {
+    			result[n++] = keys[i];
+    		}
+    	}
+    	return result;
+    }
+
+    public void clear() {
+    	keys = new long[INITIAL_CAPACITY];
+    	values = new Object[INITIAL_CAPACITY];
+    	size = 0;
+    }
+
+    private void grow() {
+    	long[] oldKeys = keys;
+    	Object[] oldValues = values;
+    	keys = new long[oldKeys.length * 2];
+    	values = new Object[oldKeys.length * 2];
+    	int mask = keys.length - 1;
+    	for (int k = 0; k < oldKeys.length; k++) {
+    		if (oldValues[k] != null) {
+    			int i = hash(oldKeys[k]) & mask;
+    			while (values[i] != null) {
+    				i = (i + 1) & mask;
+    			}
+    			keys[i] = oldKeys[k];
+    			values[i] = oldValues[k];
+    		}
+    	}
+    }
+
+    /**
+     *  Mixes all the bits of key, since the low bits of a packed pair
+     *  of termIDs alone cluster badly.
+     */
+    private static int hash(long key) {
+    	key ^= key >>> 33;
+    	key *= 0xff51afd7ed558ccdL;
+    	key ^= key >>> 33;
+    	return (int) key;
+    }
+
+}
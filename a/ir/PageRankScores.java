@@ -0,0 +1,176 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the pagerank of the documents, read once instead of for every query.
+ */
+
+package ir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ *   Holds the PageRank of each docID in a float array, read from a
+ *   score file. The file is read again only when it has changed since
+ *   it was last read, which refresh() checks with one stat of the file.
+ *   Its modification time and length are compared, and so is its key
+ *   (the inode on Unix), since a binary file rewritten for the same
+ *   docIDs keeps its length, and may keep its modification time when
+ *   the clock is coarse. pr.ScoreExport moves a new file over the old
+ *   one, so the key changes with every export.<p>
+ *
+ *   The file written by pr.ScoreExport is binary: MAGIC, the number of
+ *   docIDs, and a float per docID in docID order, so it is mapped and
+ *   copied without parsing. A file with a "docID score" line per
+ *   document is still read as text.
+ */
+public class PageRankScores {
+
+    /** The file written by pr.PageRank, relative to the working directory. */
+    public static final String SCORE_FILE = "./ir/pagerank.score";
+
+    /** Identifies the binary score file, changed with the format. */
+    public static final int MAGIC = 0x50524B31;
+
+    private File file;
+
+    /** The key, modification time and length of the file when it was read. */
+    private Object fileKey = null;
+    private long lastModified = -1;
+    private long length = -1;
+
+    /** The score of each docID, 0 for the documents not in the file. */
+    private volatile float[] scores = new float[0];
+
+    /** Incremented whenever the scores are read again. */
+    private volatile int version = 0;
+
+    public PageRankScores(File file) {
+    	this.file = file;
+    }
+
+    /**
+     *  Reads the file if it has changed since it was last read. If it
+     *  cannot be read, the previous scores are kept, and if there is no
+     *  file, all the scores are 0.
+     */
+    public synchronized void refresh() {
+    	Object key = null;
+    	long modified = 0;
+    	long size = 0;
+    	try {
+    		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    		key = attributes.fileKey();
+    		modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    		size = attributes.size();
+    	} catch (IOException e) {
+    		// there is no file, the attributes stay 0.
+    	}
+    	if (modified == lastModified && size == length
+    			&& (key == null ? fileKey == null : key.equals(fileKey))) {
+    		return;
+    	}
+    	if (!file.isFile()) {
+    		scores = new float[0];
+    		version++;
+    		fileKey = key;
+    		lastModified = modified;
+    		length = size;
+    		return;
+    	}
+    	try {
+    		scores = read(file);
+    		version++;
+    		fileKey = key;
+    		lastModified = modified;
+    		length = size;
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	} catch (NumberFormatException e) {
+    		e.printStackTrace();
+    	} // try & catch
+    }
+
+    /**
+     *  Returns a number that changes whenever refresh() reads new
+     *  scores.
+     */
+    public int getVersion() {
+    	return version;
+    }
+
+    /**
+     *  Returns the PageRank of docID, or 0 if it has none.
+     */
+    public float getScore(int docID) {
+    	float[] foo = scores;
+    	return docID >= 0 && docID < foo.length ? foo[docID] : 0;
+    }
+
+    /**
+     *  Reads the scores of file, binary if it starts with MAGIC, or
+     *  else text.
+     */
+    private static float[] read(File file) throws IOException {
+    	RandomAccessFile raf = new RandomAccessFile(file, "r");
+    	try {
+    		if (raf.length() < 8 || raf.readInt() != MAGIC) {
+    			return readText(file);
+    		}
+    		int n = raf.readInt();
+    		if (n < 0 || 8 + 4L * n > raf.length()) {
+    			throw new IOException("Truncated score file: " + file);
+    		}
+    		float[] scores = new float[n];
+    		ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 8, 4L * n);
+    		buffer.asFloatBuffer().get(scores);
+    		return scores;
+    	} finally {
+    		raf.close();
+    	}
+    }
+
+    private static float[] readText(File file) throws IOException {
+    	float[] scores = new float[1024];
+    	BufferedReader br = new BufferedReader(new FileReader(file));
+    	try {
+    		String line;
+    		while ((line = br.readLine()) != null) {
+    			line = line.trim();
+    			int space = 0;
+    			while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+    				space++;
+    			}
+    			if (space == line.length()) {
+    				continue;
+    			}
+    			// the docID and the score are separated by white space.
+    			int docID = Integer.parseInt(line.substring(0, space));
+    			if (docID >= scores.length) {
+    				scores = Arrays.copyOf(scores, Math.max(docID + 1, 2 * scores.length));
+    			}
+    			scores[docID] = Float.parseFloat(line.substring(space + 1).trim());
+    		}
+    	} finally {
+    		br.close();
+    	}
+    	return scores;
+    }
+
+}
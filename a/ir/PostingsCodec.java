@@ -0,0 +1,287 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the binary format of the postings on disk.
+ * used by the disk index (task 1.6).
+ */
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ *   Encodes PostingsLists into bytes and back.
+ *
+ *   The postings are cut into blocks of BLOCK_SIZE documents. A block
+ *   starts with a header of four variable-byte numbers: the number of
+ *   postings, the gap from the last docID of the previous block to the
+ *   last docID of this block, and the byte lengths of the two sections
+ *   that follow. The first section holds the docID gaps and the term
+ *   frequencies, the second one the position gaps of each posting. The
+ *   header lets a reader skip a block, or its positions, unread, which
+ *   the search does through a Cursor. decode() reads the whole list,
+ *   for merging and rewriting the index.
+ */
+public class PostingsCodec {
+
+    /** The number of postings in a block. */
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     *  Encodes the postings of list.
+     */
+    public static byte[] encode(PostingsList list) {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	ByteArrayOutputStream docs = new ByteArrayOutputStream();
+    	ByteArrayOutputStream positions = new ByteArrayOutputStream();
+    	int lastDocID = 0;
+    	for (int start = 0; start < list.size(); start += BLOCK_SIZE) {
+    		int end = Math.min(start + BLOCK_SIZE, list.size());
+    		docs.reset();
+    		positions.reset();
+    		int prevDocID = lastDocID;
+    		for (int i = start; i < end; i++) {
+    			writeVByte(docs, list.getDocID(i) - prevDocID);
+    			writeVByte(docs, list.getTf(i));
+    			prevDocID = list.getDocID(i);
+    			int prevPosition = 0;
+    			for (int k = 0; k < list.getTf(i); k++) {
+    				writeVByte(positions, list.getPosition(i, k) - prevPosition);
+    				prevPosition = list.getPosition(i, k);
+    			}
+    		}
+    		// docIDs and positions are both delta-encoded.
+    		writeVByte(out, end - start);
+    		writeVByte(out, prevDocID - lastDocID);
+    		writeVByte(out, docs.size());
+    		writeVByte(out, positions.size());
+    		out.write(docs.toByteArray(), 0, docs.size());
+    		out.write(positions.toByteArray(), 0, positions.size());
+    		lastDocID = prevDocID;
+    	}
+    	return out.toByteArray();
+    }
+
+    /**
+     *  Decodes all the df postings starting at the position of buf,
+     *  with their positions.
+     */
+    public static PostingsList decode(ByteBuffer buf, int df) {
+    	PostingsList list = new PostingsList();
+    	int[] docIDs = new int[BLOCK_SIZE];
+    	int[] tfs = new int[BLOCK_SIZE];
+    	int lastDocID = 0;
+    	int decoded = 0;
+    	while (decoded < df) {
+    		int count = readVByte(buf);
+    		int blockLastDocID = lastDocID + readVByte(buf);
+    		readVByte(buf);
+    		readVByte(buf);
+    		// the section lengths are only needed for skipping, see Cursor.
+    		int prevDocID = lastDocID;
+    		for (int i = 0; i < count; i++) {
+    			prevDocID += readVByte(buf);
+    			docIDs[i] = prevDocID;
+    			tfs[i] = readVByte(buf);
+    		}
+    		for (int i = 0; i < count; i++) {
+    			int position = 0;
+    			for (int k = 0; k < tfs[i]; k++) {
+    				position += readVByte(buf);
+    				list.insert(docIDs[i], position, 1.0);
+    			}
+    		}
+    		lastDocID = blockLastDocID;
+    		decoded += count;
+    	}
+    	return list;
+    }
+
+    /**
+     *   Reads the df postings starting at the position of a buffer a
+     *   block at a time. skipTo() passes over the blocks whose last
+     *   docID is too small by reading their headers only, the docIDs
+     *   and tfs of a block are decoded when the cursor stops in it, and
+     *   its positions only when position() is called, so a ranked or
+     *   intersection query never decodes a position.
+     */
+    public static class Cursor implements PostingsCursor {
+
+    	private ByteBuffer buf;
+    	private int df;
+
+    	/** The number of postings in the blocks before the current one. */
+    	private int skipped = 0;
+
+    	/** The number of postings in the current block, 0 before the first. */
+    	private int count = 0;
+
+    	/** The last docID of the previous and of the current block. */
+    	private int base = 0;
+    	private int last = 0;
+
+    	/** Where the sections of the current block, and the next block, start. */
+    	private int docsStart;
+    	private int positionsStart;
+    	private int nextBlock;
+
+    	/** The decoded postings of the current block. */
+    	private boolean docsDecoded = false;
+    	private int[] docIDs = new int[BLOCK_SIZE];
+    	private int[] tfs = new int[BLOCK_SIZE];
+
+    	/** The decoded positions of the current block, posStarts[i] for posting i. */
+    	private boolean positionsDecoded = false;
+    	private int[] posStarts = new int[BLOCK_SIZE];
+    	private int[] positions = new int[BLOCK_SIZE];
+
+    	/** The index of the current posting in the block. */
+    	private int ptr = -1;
+
+    	/**
+    	 *  Creates a cursor over the df postings starting at the position
+    	 *  of buf, which is then owned by the cursor.
+    	 */
+    	public Cursor(ByteBuffer buf, int df) {
+    		this.buf = buf;
+    		this.df = df;
+    		nextBlock = buf.position();
+    	}
+
+    	public int size() {
+    		return df;
+    	}
+
+    	public boolean next() {
+    		if (ptr + 1 >= count && !nextBlock()) {
+    			return false;
+    		}
+    		decodeDocs();
+    		ptr++;
+    		return true;
+    	}
+
+    	public boolean skipTo(int docID) {
+    		while (ptr + 1 >= count || last < docID) {
+    			if (!nextBlock()) {
+    				return false;
+    			}
+    		}
+    		// the first following posting with docID is in this block.
+    		decodeDocs();
+    		ptr++;
+    		while (docIDs[ptr] < docID) {
+    			ptr++;
+    		}
+    		return true;
+    	}
+
+    	public int docID() {
+    		return docIDs[ptr];
+    	}
+
+    	public int tf() {
+    		return tfs[ptr];
+    	}
+
+    	public int position(int k) {
+    		if (!positionsDecoded) {
+    			decodePositions();
+    		}
+    		return positions[posStarts[ptr] + k];
+    	}
+
+    	/**
+    	 *  Reads the header of the next block, leaving its postings
+    	 *  undecoded. Returns false, staying at the end, if there is none.
+    	 */
+    	private boolean nextBlock() {
+    		if (skipped + count >= df) {
+    			ptr = count;
+    			return false;
+    		}
+    		skipped += count;
+    		base = last;
+    		buf.position(nextBlock);
+    		count = readVByte(buf);
+    		last = base + readVByte(buf);
+    		int docsLength = readVByte(buf);
+    		int positionsLength = readVByte(buf);
+    		docsStart = buf.position();
+    		positionsStart = docsStart + docsLength;
+    		nextBlock = positionsStart + positionsLength;
+    		docsDecoded = false;
+    		positionsDecoded = false;
+    		ptr = -1;
+    		return true;
+    	}
+
+    	private void decodeDocs() {
+    		if (docsDecoded) {
+    			return;
+    		}
+    		buf.position(docsStart);
+    		int prevDocID = base;
+    		for (int i = 0; i < count; i++) {
+    			prevDocID += readVByte(buf);
+    			docIDs[i] = prevDocID;
+    			tfs[i] = readVByte(buf);
+    		}
+    		docsDecoded = true;
+    	}
+
+    	private void decodePositions() {
+    		int total = 0;
+    		for (int i = 0; i < count; i++) {
+    			posStarts[i] = total;
+    			total += tfs[i];
+    		}
+    		if (total > positions.length) {
+    			positions = new int[Math.max(total, 2 * positions.length)];
+    		}
+    		buf.position(positionsStart);
+    		int w = 0;
+    		for (int i = 0; i < count; i++) {
+    			int position = 0;
+    			for (int k = 0; k < tfs[i]; k++) {
+    				position += readVByte(buf);
+    				positions[w++] = position;
+    			}
+    		}
+    		positionsDecoded = true;
+    	}
+    }
+
+    /**
+     *  Writes value (>= 0) in 7-bit groups, low group first. The high
+     *  bit of a byte is set when more bytes follow.
+     */
+    public static void writeVByte(ByteArrayOutputStream out, int value) {
+    	while ((value & ~0x7F) != 0) {
+    		out.write((value & 0x7F) | 0x80);
+    		value >>>= 7;
+    	}
+    	out.write(value);
+    }
+
+    public static int readVByte(ByteBuffer buf) {
+    	int value = 0;
+    	int shift = 0;
+    	byte b;
+    	do {
+    		b = buf.get();
+    		value |= (b & 0x7F) << shift;
+    		shift += 7;
+    	} while (b < 0);
+    	return value;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * a cursor over the postings of a term.
+ * the search reads the postings through it, in memory or on disk.
+ */
+
+package ir;
+
+
+/**
+ *   Iterates over the postings of a term in docID order. A cursor is
+ *   positioned before the first posting, so next() or skipTo() has to
+ *   be called before reading. The cursor of a disk index decodes the
+ *   postings a block at a time, and the positions only when they are
+ *   read, see PostingsCodec.Cursor.
+ */
+public interface PostingsCursor {
+
+    /**  Returns the number of postings, the df of the term */
+    public int size();
+
+    /**  Moves to the next posting, returns false at the end */
+    public boolean next();
+
+    /**
+     *  Moves to the first following posting whose docID is at least
+     *  docID, returns false at the end.
+     */
+    public boolean skipTo(int docID);
+
+    public int docID();
+
+    public int tf();
+
+    /**  Returns the kth position (0 <= k < tf) of the current posting */
+    public int position(int k);
+
+}
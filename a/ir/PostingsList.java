@@ -8,168 +8,368 @@
 
 package ir;
 
+import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.LinkedList;
 import java.io.Serializable;
-import java.util.Collections;
+import java.util.Arrays;
 
 /**
  *   A list of postings for a given word.
+ *
+ *   There is one posting per document, holding the term frequency and
+ *   the sorted positions of the term in that document. The postings are
+ *   kept in parallel primitive arrays (docID, tf, score and the start
+ *   of the positions) and the positions of all the postings share one
+ *   int array, so no object is created per posting or per occurrence.
  */
 public class PostingsList implements Serializable {
-    
-    /** The postings list as a linked list. */
-    private LinkedList<PostingsEntry> list = new LinkedList<PostingsEntry>();
-    
+
+    /** The initial capacity of the arrays, grown by doubling. */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** The docIDs of the postings. */
+    private int[] docIDs = new int[INITIAL_CAPACITY];
+
+    /** The term frequencies of the postings. */
+    private int[] tfs = new int[INITIAL_CAPACITY];
+
+    /** Where the positions of each posting start in positions. */
+    private int[] posStarts = new int[INITIAL_CAPACITY];
+
+    /** The scores of the postings. */
+    private double[] scores = new double[INITIAL_CAPACITY];
+
+    /** The positions of all postings, tfs[i] of them for posting i. */
+    private int[] positions = new int[INITIAL_CAPACITY];
+
+    /**  Number of postings in this list  */
+    private int size = 0;
+
+    /**  Number of positions used in positions  */
+    private int numPositions = 0;
+
     /**  Number of postings in this list  */
     public int size() {
-        return list.size();
+        return size;
     }
 
-    /**  Returns the ith posting */
+    /**
+     *  Returns the ith posting as a new PostingsEntry.
+     *  Changes to the returned entry are not written back to the list,
+     *  use setScore() for that.
+     */
     public PostingsEntry get( int i ) {
-    	return list.get(i);
+    	PostingsEntry entry = new PostingsEntry();
+    	entry.docID = docIDs[i];
+    	entry.offset = positions[posStarts[i]];
+    	entry.score = scores[i];
+    	return entry;
+    }
+
+    /**  Returns the docID of the ith posting */
+    public int getDocID( int i ) {
+    	return docIDs[i];
+    }
+
+    /**  Returns the first offset of the ith posting */
+    public int getOffset( int i ) {
+    	return positions[posStarts[i]];
+    }
+
+    /**  Returns the term frequency of the ith posting */
+    public int getTf( int i ) {
+    	return tfs[i];
     }
 
+    /**  Returns the kth position (0 <= k < tf) of the ith posting */
+    public int getPosition( int i, int k ) {
+    	return positions[posStarts[i] + k];
+    }
+
+    /**  Returns the score of the ith posting */
+    public double getScore( int i ) {
+    	return scores[i];
+    }
+
+    /**  Sets the score of the ith posting */
+    public void setScore( int i, double score ) {
+    	scores[i] = score;
+    }
+
+    /**  Returns a cursor positioned before the first posting */
+    public Cursor cursor() {
+    	return new Cursor();
+    }
+
+    /**
+     *  Inserts an occurrence of the term. Occurrences in the same document
+     *  as the last posting are added to its positions, so the docIDs and
+     *  the offsets within a document must be inserted in increasing order.
+     */
     public void insert (int docID, int offset, double score) {
-    	PostingsEntry entry = new PostingsEntry();
-    	entry.docID = docID;
-    	entry.score = score;
-    	entry.offset = offset;
-    	// initialize a new PostingsEntry.
-    	
-    	list.add(entry);
+    	if (size > 0 && docIDs[size - 1] == docID) {
+    		addPosition(offset);
+    		tfs[size - 1]++;
+    		return;
+    	}
+    	// same document as the last posting.
+    	if (size == docIDs.length) {
+    		grow(size + 1);
+    	}
+    	docIDs[size] = docID;
+    	tfs[size] = 1;
+    	posStarts[size] = numPositions;
+    	scores[size] = score;
+    	size++;
+    	addPosition(offset);
     	// add to the PostingsList.
     }
-    
+
+    /**
+     *  Returns the index of the first posting at or after from whose
+     *  docID is at least docID, or size() if there is none. Gallops
+     *  from from in steps of 1, 2, 4, ... and then binary searches the
+     *  last step, so jumping d postings costs O(log d).
+     */
+    public int advance( int from, int docID ) {
+    	if (from >= size || docIDs[from] >= docID) {
+    		return from;
+    	}
+    	int lo = from;
+    	int step = 1;
+    	int hi = from + step;
+    	while (hi < size && docIDs[hi] < docID) {
+    		lo = hi;
+    		step <<= 1;
+    		hi = from + step;
+    	}
+    	// now docIDs[lo] < docID <= docIDs[hi].
+    	if (hi > size) {
+    		hi = size;
+    	}
+    	while (hi - lo > 1) {
+    		int mid = (lo + hi) >>> 1;
+    		if (docIDs[mid] < docID) {
+    			lo = mid;
+    		} else {
+    			hi = mid;
+    		}
+    	}
+    	return hi;
+    }
+
+    /**
+     *  Keeps the postings whose docID also occurs in listFoo.
+     *  Both lists are sorted by docID, so this list is walked once and
+     *  listFoo is galloped through with advance(). This list should be
+     *  the shorter one: the cost is O(n log(m/n)) instead of O(n + m).
+     */
     public void intersect (PostingsList listFoo) {
-    	Hashtable table = new Hashtable();
-    	for (int i = 0; i < listFoo.size(); i++) {
-    		table.put(listFoo.get(i).docID, true);
-    	}
-    	// create a hashtable for storing the docIDs.
-    		
-    	for (int i = 0; i < list.size(); i++) {
-    		if (list.get(i) == null) {
+    	if (listFoo == null) {
+    		clear();
+    		return;
+    	}
+    	int n = 0;
+    	int w = 0;
+    	int j = 0;
+    	for (int i = 0; i < size; i++) {
+    		int foo = docIDs[i];
+    		j = listFoo.advance(j, foo);
+    		if (j == listFoo.size) {
     			break;
     		}
-    		int foo = list.get(i).docID;
-    		if (!table.containsKey(foo)) {
-    			list.remove(i);
-    			i--;
+    		// when listFoo reaches its end.
+    		if (listFoo.docIDs[j] == foo) {
+    			w = move(i, n++, w, posStarts[i], tfs[i]);
     		}
-		}
+    	}
+    	size = n;
+    	numPositions = w;
     }
-    
+
     public void append(PostingsList listFoo) {
     	if (listFoo == null) {
     		return;
     	}
-	    for (int i = 0; i < listFoo.size(); i++) {
-			PostingsEntry entry = listFoo.get(i);
-			// fetch the entry.
-			this.insert(entry.docID, entry.offset, entry.score);
-			// insert to the list.
-		}
+    	ensureCapacity(size + listFoo.size);
+    	ensurePositions(numPositions + listFoo.numPositions);
+    	System.arraycopy(listFoo.docIDs, 0, docIDs, size, listFoo.size);
+    	System.arraycopy(listFoo.tfs, 0, tfs, size, listFoo.size);
+    	System.arraycopy(listFoo.scores, 0, scores, size, listFoo.size);
+    	for (int i = 0; i < listFoo.size; i++) {
+    		posStarts[size + i] = listFoo.posStarts[i] + numPositions;
+    	}
+    	System.arraycopy(listFoo.positions, 0, positions, numPositions, listFoo.numPositions);
+    	size += listFoo.size;
+    	numPositions += listFoo.numPositions;
     }
-    
+
     public void expand(PostingsList listFoo, int structureType) {
     	if (listFoo == null) {
     		return;
     	}
-    	if (this.list == null) {
-    		this.append(listFoo);
-    		return;
-    	}
-    	
-    	Hashtable<Integer, Integer> table = new Hashtable<Integer, Integer>();
-    	for (int i = 0; i < list.size(); i++) {
-    		table.put(list.get(i).docID, i);
+
+    	HashMap<Integer, Integer> table = new HashMap<Integer, Integer>();
+    	for (int i = 0; i < size; i++) {
+    		table.put(docIDs[i], i);
     	}
-    	
-    	for (int i = 0; i < listFoo.size(); i++) {
-    		PostingsEntry entry = listFoo.get(i);
-    		if (!table.containsKey(entry.docID)) {
-    			this.insert(entry.docID, entry.offset, entry.score);
+
+    	for (int i = 0; i < listFoo.size; i++) {
+    		Integer foo = table.get(listFoo.docIDs[i]);
+    		if (foo == null) {
+    			this.insert(listFoo.docIDs[i], listFoo.getOffset(i), listFoo.scores[i]);
     		} else {
     			if (structureType == 2) { // Index.SUBPHRASE
-    				list.get(table.get(entry.docID)).score += entry.score * 0.25;
+    				scores[foo] += listFoo.scores[i] * 0.25;
     			} else { // common situations.
-    				list.get(table.get(entry.docID)).score += entry.score;
+    				scores[foo] += listFoo.scores[i];
     			}
     		}
     	}
-    	//System.err.println("expanded size: " + list.size());
+    	//System.err.println("expanded size: " + size);
     }
-    
-    public void removeDuplicate(int rankingType) {
-    	Hashtable<Integer, Integer> table = new Hashtable<Integer, Integer>();
-    	// create a hash table for storing data.
-    	for (int i = 0; i < list.size(); i++) {
-    		if (list.get(i) == null) {
-    			break;
+
+    /**
+     *  Returns the documents containing the terms of all the cursors,
+     *  which are walked from the start. The rarest cursor is walked
+     *  posting by posting and the others skip to its docIDs, so the
+     *  cost is O(n log(m/n)) instead of O(n + m), and a disk cursor
+     *  decodes only the blocks it stops in. The result has the docIDs,
+     *  the positions are not read.
+     */
+    public static PostingsList intersect (PostingsCursor[] cursors) {
+    	PostingsList list = new PostingsList();
+    	int n = cursors.length;
+    	if (n == 0) {
+    		return list;
+    	}
+    	int rarest = rarest(cursors);
+    	int[] current = new int[n];
+    	Arrays.fill(current, -1);
+    	// the docID of each cursor, -1 before the first posting.
+    	while (cursors[rarest].next()) {
+    		int docID = cursors[rarest].docID();
+    		int t = match(cursors, current, rarest, docID);
+    		if (t < 0) {
+    			return list;
     		}
-    		// when the list reaches its end.
-    		int foo = list.get(i).docID;
-    		if (table.containsKey(foo)) {
-    			if (rankingType != 1) { // not Index.PAGERANK
-    				list.get(table.get(foo).intValue()).score++;
-    			} else {
-    				list.get(table.get(foo).intValue()).score = 0;
-    				// clear for pagerank
-    			}
-    			list.remove(i);
-    			i--;
-    			// return to the position.
-    		} else {
-    			table.put(foo, i);
+    		if (t == n) {
+    			list.insert(docID, 0, 1.0);
     		}
     	}
-    	
-    	//System.err.println("reduced size: " + list.size());
+    	return list;
     }
-    
-    public void appendPhrase (PostingsList listFoo, int flag) {
-    	Hashtable<Integer, LinkedList<Integer>> table = new Hashtable<Integer, LinkedList<Integer>>();
-    	for (int i = 0; i < listFoo.size(); i++) {
-    		PostingsEntry foo = listFoo.get(i);
-    		if (!table.containsKey(foo.docID)) {
-    			table.put(foo.docID, new LinkedList<Integer>());
-    		}
-    		table.get(foo.docID).add(foo.offset);
+
+    /**
+     *  Returns the postings of the documents where the terms of the
+     *  cursors (given in query order) occur in that order, with at most
+     *  slop extra positions between the first and the last term. A slop
+     *  of 0 matches the exact phrase. The positions of the result are
+     *  the positions of the first term of each match, and the score is
+     *  the number of matches in the document.
+     *
+     *  The documents containing all terms are found by skipping from the
+     *  rarest cursor, and the positions of each document are merge-joined
+     *  in one pass: for increasing positions of the first term, every
+     *  other term takes its first position after the previous term. These
+     *  positions never move backwards, so each position is visited once.
+     *  Only the positions of these documents are decoded.
+     */
+    public static PostingsList phrase (PostingsCursor[] cursors, int slop) {
+    	PostingsList list = new PostingsList();
+    	int n = cursors.length;
+    	if (n == 0) {
+    		return list;
     	}
-    	// create a table for storing the document IDs.
-    	
-    	for (int i = 0; i < list.size(); i++) {
-    		if (list.get(i) == null) {
-    			break;
+    	int rarest = rarest(cursors);
+    	int[] current = new int[n];
+    	Arrays.fill(current, -1);
+    	int[] pos = new int[n];
+    	int[] posEnds = new int[n];
+    	// the current and the number of positions in each posting.
+
+    	while (cursors[rarest].next()) {
+    		int docID = cursors[rarest].docID();
+    		int match = match(cursors, current, rarest, docID);
+    		if (match < 0) {
+    			return list;
     		}
-    		// when the list reaches its end.
-    		
-    		PostingsEntry foo = list.get(i);
-    		if (!table.containsKey(foo.docID)) {
-    			list.remove(i);
-    			i--;
-    			// when no token in the same docID, delete directly.
-    		} else {
-    			// when docID is contained in listFoo.
-    			boolean mark = false;
-    			LinkedList<Integer> listOffset = table.get(foo.docID);
-    			for (int bar : listOffset) {
-    				if (bar == foo.offset + flag) {
-    					mark = true;
+    		// when a cursor reaches its end, no more documents match.
+    		if (match < n) {
+    			continue;
+    		}
+    		// all terms occur in the document, now check the positions.
+
+    		for (int t = 0; t < n; t++) {
+    			pos[t] = 0;
+    			posEnds[t] = cursors[t].tf();
+    		}
+    		int tf = 0;
+    		for (; pos[0] < posEnds[0]; pos[0]++) {
+    			int first = cursors[0].position(pos[0]);
+    			int prev = first;
+    			int t = 1;
+    			for (; t < n; t++) {
+    				while (pos[t] < posEnds[t] && cursors[t].position(pos[t]) <= prev) {
+    					pos[t]++;
+    				}
+    				if (pos[t] == posEnds[t]) {
     					break;
     				}
-    				// when the tokens are adjacent.
+    				prev = cursors[t].position(pos[t]);
+    			}
+    			if (t < n) {
+    				break;
     			}
-    			if (!mark) {
-    				list.remove(i);
-    				i--;
+    			// when a term has no position left, no later match exists.
+    			if (prev - first - (n - 1) <= slop) {
+    				list.insert(docID, first, 0);
+    				tf++;
     			}
     		}
+    		if (tf > 0) {
+    			list.scores[list.size - 1] = tf;
+    		}
+    	}
+    	return list;
+    }
+
+    /**
+     *  Returns the index of the cursor with the fewest postings.
+     */
+    private static int rarest(PostingsCursor[] cursors) {
+    	int rarest = 0;
+    	for (int t = 1; t < cursors.length; t++) {
+    		if (cursors[t].size() < cursors[rarest].size()) {
+    			rarest = t;
+    		}
     	}
+    	return rarest;
     }
-    
+
+    /**
+     *  Moves the cursors other than rarest to docID, unless they are
+     *  already there or past it, keeping their docIDs in current.
+     *
+     *  @return the number of cursors tried until one did not have
+     *  docID, n if all of them have it, or -1 if one reached its end.
+     */
+    private static int match(PostingsCursor[] cursors, int[] current, int rarest, int docID) {
+    	current[rarest] = docID;
+    	for (int t = 0; t < cursors.length; t++) {
+    		if (current[t] < docID) {
+    			if (!cursors[t].skipTo(docID)) {
+    				return -1;
+    			}
+    			current[t] = cursors[t].docID();
+    		}
+    		if (current[t] != docID) {
+    			return t;
+    		}
+    	}
+    	return cursors.length;
+    }
+
     public void generateByScore(Hashtable<Integer, Double> score) {
     	// for task 2.2.
     	// generate a new postingslist by the calculated scores.
@@ -177,24 +377,164 @@ public class PostingsList implements Serializable {
     		this.insert(docID, 0, score.get(docID));
     	}
     }
-    
+
+    /**
+     *  Sorts the postings by descending score.
+     */
     public void sort() {
-    	Collections.sort(list);
+    	sort(0, size - 1);
     }
-    
+
     /**
-     * for task 3.3.
-     * sort out the most ranked numChampions documents.
-     * for time saving purpose.
+     *  Quicksorts the postings lo..hi (inclusive) by descending score.
+     *  The positions stay where they are, only posStarts is swapped.
      */
-    public void sortChampionList(int numChampions) {
-    	this.sort();
-    	while (this.list.size() > numChampions) {
-    		this.list.remove(numChampions);
+    private void sort(int lo, int hi) {
+    	while (hi - lo > 16) {
+    		double pivot = scores[(lo + hi) >>> 1];
+    		int i = lo;
+    		int j = hi;
+    		while (i <= j) {
+    			while (scores[i] > pivot) {
+    				i++;
+    			}
+    			while (scores[j] < pivot) {
+    				j--;
+    			}
+    			if (i <= j) {
+    				swap(i++, j--);
+    			}
+    		}
+    		// recurse into the smaller half, loop on the larger one.
+    		if (j - lo < hi - i) {
+    			sort(lo, j);
+    			lo = i;
+    		} else {
+    			sort(i, hi);
+    			hi = j;
+    		}
     	}
+    	for (int i = lo + 1; i <= hi; i++) {
+    		for (int j = i; j > lo && scores[j - 1] < scores[j]; j--) {
+    			swap(j - 1, j);
+    		}
+    	}
+    	// insertion sort for the short ranges.
+    }
+
+    private void swap(int i, int j) {
+    	int docID = docIDs[i];
+    	docIDs[i] = docIDs[j];
+    	docIDs[j] = docID;
+    	int tf = tfs[i];
+    	tfs[i] = tfs[j];
+    	tfs[j] = tf;
+    	int posStart = posStarts[i];
+    	posStarts[i] = posStarts[j];
+    	posStarts[j] = posStart;
+    	double score = scores[i];
+    	scores[i] = scores[j];
+    	scores[j] = score;
+    }
+
+    /**
+     *  Copies the posting at from to the position to (to <= from), with
+     *  tf of its positions starting at posStart, and packs the positions
+     *  at w. Used when compacting a list that has not been sorted by
+     *  score, so the positions are in posting order and w <= posStart.
+     *
+     *  @return the position after the copied positions.
+     */
+    private int move(int from, int to, int w, int posStart, int tf) {
+    	docIDs[to] = docIDs[from];
+    	scores[to] = scores[from];
+    	tfs[to] = tf;
+    	System.arraycopy(positions, posStart, positions, w, tf);
+    	posStarts[to] = w;
+    	return w + tf;
     }
-    
-}
-	
 
-			   
+    private void clear() {
+    	size = 0;
+    	numPositions = 0;
+    }
+
+    private void addPosition(int offset) {
+    	ensurePositions(numPositions + 1);
+    	positions[numPositions++] = offset;
+    }
+
+    private void ensureCapacity(int capacity) {
+    	if (capacity > docIDs.length) {
+    		grow(capacity);
+    	}
+    }
+
+    private void grow(int capacity) {
+    	int length = Math.max(capacity, docIDs.length * 2);
+    	docIDs = Arrays.copyOf(docIDs, length);
+    	tfs = Arrays.copyOf(tfs, length);
+    	posStarts = Arrays.copyOf(posStarts, length);
+    	scores = Arrays.copyOf(scores, length);
+    }
+
+    private void ensurePositions(int capacity) {
+    	if (capacity > positions.length) {
+    		positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+    	}
+    }
+
+    /**
+     *  Iterates over the postings without creating PostingsEntry objects.
+     *  A new cursor is positioned before the first posting, so next()
+     *  has to be called before reading.
+     */
+    public class Cursor implements PostingsCursor {
+
+    	/** The index of the current posting. */
+    	private int ptr = -1;
+
+    	public int size() {
+    		return size;
+    	}
+
+    	/**  Moves to the next posting, returns false at the end */
+    	public boolean next() {
+    		return ++ptr < size;
+    	}
+
+    	/**
+    	 *  Moves to the first following posting whose docID is at least
+    	 *  docID, returns false at the end.
+    	 */
+    	public boolean skipTo(int docID) {
+    		ptr = advance(ptr + 1, docID);
+    		return ptr < size;
+    	}
+
+    	public int docID() {
+    		return docIDs[ptr];
+    	}
+
+    	public int offset() {
+    		return positions[posStarts[ptr]];
+    	}
+
+    	public int tf() {
+    		return tfs[ptr];
+    	}
+
+    	public int position(int k) {
+    		return positions[posStarts[ptr] + k];
+    	}
+
+    	public double score() {
+    		return scores[ptr];
+    	}
+
+    	public void setScore(double score) {
+    		scores[ptr] = score;
+    	}
+    }
+
+}
@@ -16,6 +16,24 @@ public class Query {
     public LinkedList<String> terms = new LinkedList<String>();
     public LinkedList<Double> weights = new LinkedList<Double>();
     
+    /**
+     *  The number of extra positions allowed between the terms in a
+     *  proximity query, 0 means an exact phrase.
+     */
+    public int slop = 0;
+    
+    /**
+     *  Whether a ranked query searches the champion tiers first, going
+     *  to a lower tier only if it gets too few documents.
+     */
+    public boolean tiered = false;
+    
+    /**
+     *  The weight of each topic in the PageRank of the query, see
+     *  TopicScores. No topics means the global PageRank.
+     */
+    public HashMap<String, Double> topics = new HashMap<String, Double>();
+    
     /**
      * the parameters used for rocchio's algorithm.
      */
@@ -53,6 +71,9 @@ public class Query {
 		Query queryCopy = new Query();
 		queryCopy.terms = (LinkedList<String>) terms.clone();
 		queryCopy.weights = (LinkedList<Double>) weights.clone();
+		queryCopy.slop = slop;
+		queryCopy.tiered = tiered;
+		queryCopy.topics = new HashMap<String, Double>(topics);
 		return queryCopy;
     }
     
@@ -85,10 +106,10 @@ public class Query {
     		if (!docIsRelevant[i]) {
     			continue;
     		}
-    		PostingsEntry entry = results.get(i);
+    		int docID = results.getDocID(i);
     		
     		for (String token : this.terms) {
-    			double foo = (BETA * ((HashedIndex)indexer.index).getTfIdfScore(token, entry.docID)) / numRelevantDocs;
+    			double foo = (BETA * ((HashedIndex)indexer.index).getTfIdfScore(token, docID)) / numRelevantDocs;
     			// BETA * <weight of docs> (first normalization).
     			scores.put(token, scores.get(token) + foo);
     		} // for 2
@@ -0,0 +1,97 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the results of the last queries, kept until the index changes.
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ *   Keeps the results of the most recently used queries, at most
+ *   capacity of them, in a LinkedHashMap in access order, dropping the
+ *   least recently used result when full.<p>
+ *
+ *   A result is valid for the generation of the index it was computed
+ *   in (see Indexer.generation): asking with another generation empties
+ *   the cache. The results are shared, so they must not be changed.
+ */
+public class QueryCache {
+
+    private int capacity;
+
+    /** The generation of the index of the cached results. */
+    private long generation = -1;
+
+    private LinkedHashMap<String, PostingsList> results;
+
+    public QueryCache(final int capacity) {
+    	this.capacity = capacity;
+    	results = new LinkedHashMap<String, PostingsList>(16, 0.75f, true) {
+    		protected boolean removeEldestEntry(Map.Entry<String, PostingsList> eldest) {
+    			return size() > QueryCache.this.capacity;
+    		}
+    	};
+    }
+
+    /**
+     *  Returns the result of key in generation, or null if there is
+     *  none.
+     */
+    public synchronized PostingsList get(String key, long generation) {
+    	if (generation != this.generation) {
+    		results.clear();
+    		this.generation = generation;
+    		return null;
+    	}
+    	return results.get(key);
+    }
+
+    /**
+     *  Caches the result of key, computed in generation.
+     */
+    public synchronized void put(String key, long generation, PostingsList result) {
+    	if (generation != this.generation) {
+    		results.clear();
+    		this.generation = generation;
+    	}
+    	if (capacity > 0 && result != null) {
+    		results.put(key, result);
+    	}
+    }
+
+    public synchronized int size() {
+    	return results.size();
+    }
+
+    /**
+     *  Returns the key of a search: the terms and weights of query, its
+     *  options, and the types of the search, so that two searches with
+     *  the same key have the same result.
+     */
+    public static String key(Query query, int queryType, int rankingType, int structureType, int k) {
+    	StringBuilder buf = new StringBuilder();
+    	buf.append(queryType).append(' ').append(rankingType).append(' ').append(structureType);
+    	buf.append(' ').append(k).append(' ').append(query.slop).append(' ').append(query.tiered);
+    	for (int i = 0; i < query.terms.size(); i++) {
+    		buf.append(' ').append(query.terms.get(i)).append('^').append(query.weights.get(i));
+    	}
+    	String[] topics = query.topics.keySet().toArray(new String[0]);
+    	Arrays.sort(topics);
+    	for (String topic : topics) {
+    		buf.append(" @").append(topic).append('^').append(query.topics.get(topic));
+    	}
+    	return buf.toString();
+    }
+
+}
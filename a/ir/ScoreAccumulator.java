@@ -0,0 +1,114 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the scores of the documents matching a ranked query.
+ * the top k documents are picked with a heap (see TopK), so the
+ * matches are never sorted.
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   Sums the scores of documents, indexed by docID in a primitive array
+ *   since the docIDs are dense, and selects the k best documents.<p>
+ *
+ *   The arrays have a slot per document, so an index keeps one
+ *   accumulator per searching thread and reset() clears only the
+ *   docIDs that got a score: a query costs the postings it reads, not
+ *   the size of the collection.
+ */
+public class ScoreAccumulator {
+
+    /** The score of each docID. */
+    private double[] scores;
+
+    /** Whether each docID has a score. */
+    private boolean[] seen;
+
+    /** The docIDs with a score, in the order they got it. */
+    private int[] docIDs = new int[16];
+    private int size = 0;
+
+    /**
+     *  Creates an accumulator for docIDs up to about numDocuments.
+     */
+    public ScoreAccumulator(int numDocuments) {
+    	scores = new double[Math.max(16, numDocuments)];
+    	seen = new boolean[scores.length];
+    }
+
+    /**
+     *  Adds score to the score of docID.
+     */
+    public void add(int docID, double score) {
+    	if (docID >= scores.length) {
+    		int length = Math.max(docID + 1, 2 * scores.length);
+    		scores = Arrays.copyOf(scores, length);
+    		seen = Arrays.copyOf(seen, length);
+    	}
+    	if (!seen[docID]) {
+    		seen[docID] = true;
+    		if (size == docIDs.length) {
+    			docIDs = Arrays.copyOf(docIDs, 2 * size);
+    		}
+    		docIDs[size++] = docID;
+    	}
+    	scores[docID] += score;
+    }
+
+    /**
+     *  Removes all the scores, clearing only the slots that were used.
+     */
+    public void reset() {
+    	for (int i = 0; i < size; i++) {
+    		scores[docIDs[i]] = 0;
+    		seen[docIDs[i]] = false;
+    	}
+    	size = 0;
+    }
+
+    /**
+     *  Returns the number of docIDs with a score.
+     */
+    public int size() {
+    	return size;
+    }
+
+    /**
+     *  Returns the i:th docID that got a score.
+     */
+    public int getDocID(int i) {
+    	return docIDs[i];
+    }
+
+    public double getScore(int docID) {
+    	return docID < scores.length ? scores[docID] : 0;
+    }
+
+    public void setScore(int docID, double score) {
+    	scores[docID] = score;
+    }
+
+    /**
+     *  Returns the k documents with the highest scores, best first, ties
+     *  broken by lower docID. The documents are picked with a TopK heap,
+     *  so this takes O(n log k).
+     */
+    public PostingsList topK(int k) {
+    	TopK top = new TopK(k);
+    	for (int i = 0; i < size; i++) {
+    		top.offer(docIDs[i], scores[docIDs[i]]);
+    	}
+    	return top.toPostingsList();
+    }
+
+}
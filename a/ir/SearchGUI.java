@@ -13,6 +13,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
 import java.awt.*;
@@ -41,9 +42,24 @@ public class SearchGUI extends JFrame {
     /**  The query type (either intersection, phrase, or ranked). */
     int queryType = Index.INTERSECTION_QUERY;
 
+    /**  The number of extra positions allowed between the terms of a proximity query. */
+    int slop = 3;
+
+    /**  The number of documents returned by a ranked query. */
+    int numResults = 100;
+
+    /**  Whether a ranked query searches the champion lists first. */
+    boolean tiered = false;
+
+    /**  The weight of each chosen topic in the PageRank, see TopicScores. */
+    HashMap<String, Double> topics = new HashMap<String, Double>();
+
     /**  The index type (either entirely in memory or partly on disk). */
     int indexType = Index.HASHED_INDEX;
 
+    /**  Whether the directories are indexed even if an index was saved before. */
+    boolean reindex = false;
+
     /**  The ranking type (either tf-idf, pagerank, or combination). */
     int rankingType = Index.TF_IDF;
 		
@@ -53,9 +69,6 @@ public class SearchGUI extends JFrame {
     /**  Lock to prevent simultaneous access to the index. */
     Object indexLock = new Object();
     
-    /**  Specify the file size for writing into a file. */
-    int WRITE_SIZE = 5000;
-
     /**  Directory from which the code is compiled and run. */
     public static final String homeDir = "/users/pizzadaisuki/kth/spring 2016/dd2476/a";
     
@@ -65,6 +78,16 @@ public class SearchGUI extends JFrame {
     /**  specify the satisfactory amount of documents in sub-phrase retrieval. */
     private static final int GOOD_NUM_OF_DOCUMENTS = 50;
 
+    /**  The number of query results kept in the cache. */
+    private static final int CACHE_SIZE = 1000;
+
+    /**  The results of the last queries, see search(). */
+    QueryCache cache = new QueryCache( CACHE_SIZE );
+
+    /**  Whether the results came from the cache, and the structure they were searched in. */
+    boolean resultsCached = false;
+    int resultsStructure = Index.UNIGRAM;
+
     /*
      *   The nice logotype
      *   Generated at http://neswork.com/logo-generator/google-font
@@ -86,14 +109,17 @@ public class SearchGUI extends JFrame {
     JMenu optionsMenu = new JMenu( "Search options" );
     JMenu rankingMenu = new JMenu( "Ranking score" ); 
     JMenu structureMenu = new JMenu( "Text structure" ); 
+    JMenu topicMenu = new JMenu( "PageRank topics" );
     JMenuItem saveItem = new JMenuItem( "Save index and exit" );
     JMenuItem quitItem = new JMenuItem( "Quit" );
     JRadioButtonMenuItem intersectionItem = new JRadioButtonMenuItem( "Intersection query" );
     JRadioButtonMenuItem phraseItem = new JRadioButtonMenuItem( "Phrase query" );
+    JRadioButtonMenuItem proximityItem = new JRadioButtonMenuItem( "Proximity query" );
     JRadioButtonMenuItem rankedItem = new JRadioButtonMenuItem( "Ranked retrieval" );
     JRadioButtonMenuItem tfidfItem = new JRadioButtonMenuItem( "tf-idf" );
     JRadioButtonMenuItem pagerankItem = new JRadioButtonMenuItem( "PageRank" );
     JRadioButtonMenuItem combinationItem = new JRadioButtonMenuItem( "Combination" );
+    JCheckBoxMenuItem championItem = new JCheckBoxMenuItem( "Champion lists" );
     JRadioButtonMenuItem unigramItem = new JRadioButtonMenuItem( "Unigram" );
     JRadioButtonMenuItem bigramItem = new JRadioButtonMenuItem( "Bigram" );
     JRadioButtonMenuItem subphraseItem = new JRadioButtonMenuItem( "Subphrase" );
@@ -127,15 +153,20 @@ public class SearchGUI extends JFrame {
 	fileMenu.add( quitItem );
 	optionsMenu.add( intersectionItem );
 	optionsMenu.add( phraseItem );
+	optionsMenu.add( proximityItem );
 	optionsMenu.add( rankedItem );
 	rankingMenu.add( tfidfItem ); 
 	rankingMenu.add( pagerankItem ); 
 	rankingMenu.add( combinationItem ); 
+	rankingMenu.addSeparator();
+	rankingMenu.add( championItem );
+	rankingMenu.add( topicMenu );
 	structureMenu.add( unigramItem ); 
 	structureMenu.add( bigramItem ); 
 	structureMenu.add( subphraseItem ); 
 	queries.add( intersectionItem );
 	queries.add( phraseItem );
+	queries.add( proximityItem );
 	queries.add( rankedItem );
 	ranking.add( tfidfItem ); 
 	ranking.add( pagerankItem );
@@ -178,43 +209,28 @@ public class SearchGUI extends JFrame {
 		    // Normalize the search string and turn it into a Query
 		    String queryString = SimpleTokenizer.normalize( queryWindow.getText() );
 		    query = new Query( queryString );
+		    query.slop = slop;
+		    query.tiered = tiered;
+		    query.topics = new HashMap<String, Double>( topics );
 		    // Search and print results. Access to the index is synchronized since
 		    // we don't want to search at the same time we're indexing new files
 		    // (this might corrupt the index).
 		    synchronized ( indexLock ) {
-		    	if (structureType == Index.SUBPHRASE) {
-		    		int numQueryTerms = query.terms.size();
-		    		if (Math.min(MAX_PHRASE_LENGTH, numQueryTerms) == MAX_PHRASE_LENGTH) {
-		    			results = indexer.indexBiword.search(query, queryType, rankingType, structureType);
-		    		} // biword retrieval when needed.
-		    		if (results == null || results.size() < GOOD_NUM_OF_DOCUMENTS) {
-		    			PostingsList listFoo = indexer.index.search(query, queryType, rankingType, structureType);
-		    			if (results == null) {
-		    				results.append(listFoo);
-		    			} else {
-		    				results.expand(listFoo, structureType);
-		    			}
-		    		}
-		    	} // if
-		    	else if (structureType == Index.BIGRAM) {
-		    		results = indexer.indexBiword.search(query, queryType, rankingType, structureType);
-		    	} else {
-		    		results = indexer.index.search(query, queryType, rankingType, structureType);
-		    	}
+		    	results = search( query, structureType );
 		    }
 		    StringBuffer buf = new StringBuffer();
 		    if ( results != null ) {
 				buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
 				for ( int i=0; i<results.size(); i++ ) {
 				    buf.append( " " + i + ". " );
-				    String filename = indexer.index.docIDs.get( "" + results.get(i).docID );
+				    String filename = indexer.index.getDocuments().getPath( results.getDocID(i) );
 				    if ( filename == null ) {
-				    	buf.append( "" + results.get(i).docID );
+				    	buf.append( "" + results.getDocID(i) );
 				    } else {
 				    	buf.append( filename );
 				    }
 				    if ( queryType == Index.RANKED_QUERY ) {
-				    	buf.append( "   " + String.format( "%.5f", results.get(i).score )); 
+				    	buf.append( "   " + String.format( "%.5f", results.getScore(i) )); 
 				    }
 				    buf.append( "\n" );
 				}
@@ -242,30 +258,29 @@ public class SearchGUI extends JFrame {
 			    docIsRelevant[i] = feedbackButton[i].isSelected(); 
 			}
 			// Expand the current search query with the documents marked as relevant 
-			query.relevanceFeedback( results, docIsRelevant, indexer );
-			
 			// Perform a new search with the weighted and expanded query. Access to the index is 
 			// synchronized since we don't want to search at the same time we're indexing new files
 			// (this might corrupt the index).
 			synchronized ( indexLock ) {
-				if (structureType == Index.BIGRAM) {
-		    		results = indexer.indexBiword.search(query, queryType, rankingType, structureType);
-		    	} else {
-		    		results = indexer.index.search(query, queryType, rankingType, structureType);
-		    	}
+				if ( resultsCached ) {
+					execute( query, resultsStructure );
+				}
+				// the feedback reads the tf-idf scores of the last search run.
+				query.relevanceFeedback( results, docIsRelevant, indexer );
+				results = search( query, structureType == Index.BIGRAM ? Index.BIGRAM : Index.UNIGRAM );
 			}
 			buf.append( "\nSearch after relevance feedback:\n" );
 			buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
 			for ( int i=0; i<results.size(); i++ ) {
 			    buf.append( " " + i + ". " );
-			    String filename = indexer.index.docIDs.get( "" + results.get(i).docID );
+			    String filename = indexer.index.getDocuments().getPath( results.getDocID(i) );
 			    if ( filename == null ) {
-				buf.append( "" + results.get(i).docID );
+				buf.append( "" + results.getDocID(i) );
 			    }
 			    else {
 				buf.append( filename );
 			    }
-			    buf.append( "   " + String.format( "%.5f", results.get(i).score ) + "\n" );
+			    buf.append( "   " + String.format( "%.5f", results.getScore(i) ) + "\n" );
 			}
 		    }
 		    else {
@@ -280,6 +295,7 @@ public class SearchGUI extends JFrame {
 	Action saveAndQuit = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
 		    resultWindow.setText( "\n  Saving index..." );
+		    indexer.writeFile();
 		    indexer.index.cleanup();
 		    System.exit( 0 );
 		}
@@ -309,6 +325,13 @@ public class SearchGUI extends JFrame {
 	    };
 	phraseItem.addActionListener( setPhraseQuery );
 		
+	Action setProximityQuery = new AbstractAction() {
+		public void actionPerformed( ActionEvent e ) {
+		    queryType = Index.PROXIMITY_QUERY;
+		}
+	    };
+	proximityItem.addActionListener( setProximityQuery );
+		
 	Action setRankedQuery = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
 		    queryType = Index.RANKED_QUERY;
@@ -336,6 +359,42 @@ public class SearchGUI extends JFrame {
 		}
 		};
 	combinationItem.addActionListener( setCombinationRanking );
+		
+	Action setChampionLists = new AbstractAction() {
+		public void actionPerformed( ActionEvent e ) {
+			tiered = championItem.isSelected();
+		}
+		};
+	championItem.addActionListener( setChampionLists );
+
+	topicMenu.addMenuListener( new MenuListener() {
+		public void menuSelected( MenuEvent e ) {
+			// list the topics computed by pr.TopicRank so far.
+			TopicScores topicScores = HashedIndex.getTopicScores();
+			topicScores.refresh();
+			topicMenu.removeAll();
+			for ( final String topic : topicScores.getTopics() ) {
+				final JCheckBoxMenuItem item = new JCheckBoxMenuItem( topic, topics.containsKey( topic ));
+				item.addActionListener( new ActionListener() {
+					public void actionPerformed( ActionEvent e ) {
+						if ( item.isSelected() ) {
+							topics.put( topic, 1.0 );
+						} else {
+							topics.remove( topic );
+						}
+					}
+				});
+				topicMenu.add( item );
+			}
+			if ( topicMenu.getItemCount() == 0 ) {
+				topicMenu.add( new JMenuItem( "(none)" )).setEnabled( false );
+			}
+		}
+		public void menuDeselected( MenuEvent e ) {
+		}
+		public void menuCanceled( MenuEvent e ) {
+		}
+	});
 
 	Action setUnigramStructure = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
@@ -360,38 +419,93 @@ public class SearchGUI extends JFrame {
 	}
 	
  
+    /* ----------------------------------------------- */
+
+
+    /**
+     *   Searches the index of structure with the current options, or
+     *   returns the result of the same search from the cache, if the
+     *   index has not changed since. The result of a pagerank search is
+     *   also kept only as long as the pagerank. Must be called holding
+     *   indexLock.
+     */
+    private PostingsList search( Query query, int structure ) {
+	String key = QueryCache.key( query, queryType, rankingType, structure, numResults );
+	if ( queryType == Index.RANKED_QUERY && rankingType != Index.TF_IDF ) {
+	    key += " #" + HashedIndex.getPageRankVersion();
+	}
+	long generation = indexer.generation;
+	PostingsList list = cache.get( key, generation );
+	resultsCached = list != null;
+	resultsStructure = structure;
+	if ( list == null ) {
+	    list = execute( query, structure );
+	    cache.put( key, generation, list );
+	}
+	return list;
+    }
+
+    /**
+     *   Searches the index of structure with the current options. A
+     *   subphrase search tries the bigrams first and adds the unigram
+     *   results if there are too few.
+     */
+    private PostingsList execute( Query query, int structure ) {
+	PostingsList list = null;
+	if (structure == Index.SUBPHRASE) {
+		int numQueryTerms = query.terms.size();
+		if (Math.min(MAX_PHRASE_LENGTH, numQueryTerms) == MAX_PHRASE_LENGTH) {
+			list = indexer.indexBiword.search(query, queryType, rankingType, structure, numResults);
+		} // biword retrieval when needed.
+		if (list == null || list.size() < GOOD_NUM_OF_DOCUMENTS) {
+			PostingsList listFoo = indexer.index.search(query, queryType, rankingType, structure, numResults);
+			if (list == null) {
+				list = listFoo;
+			} else {
+				list.expand(listFoo, structure);
+			}
+		}
+	} // if
+	else if (structure == Index.BIGRAM) {
+		list = indexer.indexBiword.search(query, queryType, rankingType, structure, numResults);
+	} else {
+		list = indexer.index.search(query, queryType, rankingType, structure, numResults);
+	}
+	return list;
+    }
+
+
     /* ----------------------------------------------- */
    
 
     /**
-     *   Calls the indexer to index the chosen directory structure.
+     *   Calls the indexer to index the chosen directory structure, or
+     *   opens the index saved by an earlier run if there is one.
      *   Access to the index is synchronized since we don't want to 
      *   search at the same time we're indexing new files (this might 
      *   corrupt the index).
      */
     private void index() {
 		synchronized ( indexLock ) {
+		    if ( !reindex && indexer.openIndex() ) {
+		    	resultWindow.setText( "\n  Opened the saved index." );
+		    	return;
+		    }
+		    // the saved index is not built again, unless -r is given.
 		    resultWindow.setText( "\n  Indexing, please wait..." );
 		    
 		    int size = dirNames.size();
-		    boolean isWriteMode = false;
-		    boolean isIndexEmpty = true;//false;
-		    // set a parameter for controlling writing to files.
-		    File dir = new File("./index");
-		    /*if (dir.list().length == 0) {
-		    	isIndexEmpty = true;
-		    }*/
-		    
 	    	for (int i = 0; i < size; i++) {
 		    	File dokDir = new File( dirNames.get( i ));
-		    	/*if (i % WRITE_SIZE == 0 || i == size - 1) {
-		    		isWriteMode = true;
-		    	}*/
-		    	// write for every WRITE_SIZE files or when the directory reaches its end.
-		    	indexer.processFiles(dokDir, isWriteMode, isIndexEmpty);
-		    	//isWriteMode = false;
+		    	indexer.processFiles(dokDir);
 		    }
-	    	//indexer.synchronize();
+	    	// the indexer flushes segments to disk when over its memory budget.
+	    	if (indexType == Index.DISK_INDEX) {
+	    		indexer.moveIndexToDisk();
+	    	} else {
+	    		indexer.synchronize();
+	    	}
+	    	// merge the segments and serve the postings from disk (task 1.6).
 		    resultWindow.setText( "\n  Done!" );
 		}
     };
@@ -412,6 +526,38 @@ public class SearchGUI extends JFrame {
 		    dirNames.add( args[i++] );
 		}
 	    }
+	    else if ( "-disk".equals( args[i] )) {
+		i++;
+		indexType = Index.DISK_INDEX;
+	    }
+	    else if ( "-r".equals( args[i] )) {
+		i++;
+		reindex = true;
+	    }
+	    else if ( "-t".equals( args[i] )) {
+		i++;
+		if ( i < args.length ) {
+		    indexer.numThreads = Integer.parseInt( args[i++] );
+		}
+	    }
+	    else if ( "-m".equals( args[i] )) {
+		i++;
+		if ( i < args.length ) {
+		    indexer.memoryBudget = Long.parseLong( args[i++] ) * 1024 * 1024;
+		}
+	    }
+	    else if ( "-s".equals( args[i] )) {
+		i++;
+		if ( i < args.length ) {
+		    slop = Integer.parseInt( args[i++] );
+		}
+	    }
+	    else if ( "-k".equals( args[i] )) {
+		i++;
+		if ( i < args.length ) {
+		    numResults = Integer.parseInt( args[i++] );
+		}
+	    }
 	    else {
 		System.err.println( "Unknown option: " + args[i] );
 		break;
@@ -37,6 +37,12 @@ public class SimpleTokenizer {
     /** The next token to emit. */
     String nextTok;
 
+    /** Where the last span returned by nextSpan() starts in the buffer. */
+    int spanStart = 0;
+
+    /** The length of the last span returned by nextSpan(). */
+    int spanLength = 0;
+
     /** @code{true} if we've started reading tokens. */
     boolean started_reading = false;
 
@@ -51,6 +57,26 @@ public class SimpleTokenizer {
     static final char[] translation =
     { 'a', 'a', 'a', '', '', 'e', 'e', 'e', 'i', 'n', '', 'o', '', 'u', 'u', 'u', '', '', '', '', '', '', '', '', '', '', '#' };
 
+    /** 
+     *  The normalized counterpart of every character, or 0 if the
+     *  character cannot occur in a token. Built from the arrays above,
+     *  so normalizing a character is a single lookup.
+     */
+    static final char[] normalized = new char[65536];
+
+    static {
+	for ( char c='0'; c<='9'; c++ ) {
+	    normalized[c] = c;
+	}
+	for ( char c='a'; c<='z'; c++ ) {
+	    normalized[c] = c;
+	    normalized[c-32] = c;
+	}
+	for ( int i=special_char.length-1; i>=0; i-- ) {
+	    normalized[special_char[i]] = translation[i];
+	}
+	// backwards, so the first occurrence of a character wins.
+    }
 
 
     public SimpleTokenizer( Reader reader ) {
@@ -84,24 +110,12 @@ public class SimpleTokenizer {
      */
 
     public static boolean normalize( char[] buf, int ptr ) {
-	char c = buf[ptr];
-	if (( c >= '0' && c <= '9' ) ||
-	    ( c >= 'a' && c <= 'z' )) {
-	    return true;
-	}
-	else if ( c >= 'A' && c <= 'Z' ) {
-	    buf[ptr] = (char)(c+32);
-	    return true;
-	}
-	else {
-	    for ( int i=0; i<special_char.length; i++ ) {
-		if ( special_char[i] == c ) {
-		    buf[ptr] = translation[i];
-		    return true;
-		}
-	    }
+	char c = normalized[buf[ptr]];
+	if ( c == 0 ) {
 	    return false;
 	}
+	buf[ptr] = c;
+	return true;
     }
 
 
@@ -127,14 +141,14 @@ public class SimpleTokenizer {
 	if ( !started_reading ) {
 	    s = readToken();
 	    if ( s != null ) {
-		s = s.replaceAll( "#", "" );
+		s = removeHash( s );
 		nextTok = readToken();
 	    }
 	    return s;
 	}
 	else {
 	    if ( nextTok != null ) {
-		s = nextTok.replaceAll( "#", "" );
+		s = removeHash( nextTok );
 	    }
 	    nextTok = readToken();
 	    return s;
@@ -142,6 +156,124 @@ public class SimpleTokenizer {
     }
 
 
+    /**
+     *  Removes the '#' characters, which only mark the broken
+     *  characters translated above. Returns s itself if it has none.
+     */
+    private static String removeHash( String s ) {
+	if ( s.indexOf( '#' ) < 0 ) {
+	    return s;
+	}
+	char[] chars = s.toCharArray();
+	int length = removeHash( chars, 0, chars.length );
+	return new String( chars, 0, length );
+    }
+
+
+    /**
+     *  Removes the '#' characters in buf[start..start+length) in place.
+     *
+     *  @return the new length.
+     */
+    private static int removeHash( char[] buf, int start, int length ) {
+	int w = start;
+	for ( int i=start; i<start+length; i++ ) {
+	    if ( buf[i] != '#' ) {
+		buf[w++] = buf[i];
+	    }
+	}
+	return w-start;
+    }
+
+
+    /**
+     *  Reads the next token into the buffer without creating a String.
+     *  The token is then buffer()[spanStart()..spanStart()+spanLength()),
+     *  which stays valid until the next call. Cannot be mixed with
+     *  hasMoreTokens() and nextToken() on the same tokenizer.
+     *
+     *  @return @code{true} if a token was read, and @code{false} if
+     *  there are no more tokens.
+     */
+    public boolean nextSpan() throws IOException {
+	if ( !started_reading ) {
+	    refillBuffer( 0 );
+	    started_reading = true;
+	}
+	while ( true ) {
+	    if ( ptr == BUFFER_LENGTH ) {
+		// The buffer has been read, so refill it
+		if ( tokenStart > 0 ) {
+		    // Keep the part of the token read already.
+		    java.lang.System.arraycopy( buf, tokenStart, buf, 0, BUFFER_LENGTH-tokenStart );
+		    refillBuffer( BUFFER_LENGTH-tokenStart );
+		    ptr = BUFFER_LENGTH-tokenStart;
+		    tokenStart = 0;
+		}
+		else {
+		    if ( tokenStart == 0 && emitSpan( ptr )) {
+			// The token fills the buffer, so it is cut here.
+			return true;
+		    }
+		    refillBuffer( 0 );
+		    ptr = 0;
+		}
+	    }
+	    if ( buf[ptr] == 0 ) {
+		// End of text, which may end a token.
+		if ( tokenStart >= 0 && emitSpan( ptr )) {
+		    return true;
+		}
+		tokenStart = -1;
+		return false;
+	    }
+	    if ( normalize( buf, ptr )) {
+		if ( tokenStart < 0 ) {
+		    // A token starts here
+		    tokenStart = ptr;
+		}
+		ptr++;
+	    }
+	    else {
+		ptr++;
+		if ( tokenStart >= 0 && emitSpan( ptr-1 )) {
+		    return true;
+		}
+	    }
+	}
+    }
+
+
+    /**
+     *  Ends the current token at end. Returns @code{false} if nothing
+     *  is left of it once the '#' characters are removed.
+     */
+    private boolean emitSpan( int end ) {
+	spanStart = tokenStart;
+	spanLength = removeHash( buf, tokenStart, end-tokenStart );
+	tokenStart = -1;
+	return spanLength > 0;
+    }
+
+
+    /** The buffer holding the span returned by nextSpan(). */
+    public char[] buffer() {
+	return buf;
+    }
+
+
+    /** Where the span returned by nextSpan() starts in buffer(). */
+    public int spanStart() {
+	return spanStart;
+    }
+
+
+    /** The length of the span returned by nextSpan(). */
+    public int spanLength() {
+	return spanLength;
+    }
+
+
     /**
      *  Reads the next token. 
      */ 
@@ -204,11 +336,20 @@ public class SimpleTokenizer {
 
     /**
      *  Refills the buffer and adds end_of_file "\0" at the appropriate place.
+     *  A reader may return fewer characters than asked for before the end
+     *  of the file, so it is read until the buffer is full or the file ends.
      */
     private void refillBuffer( int start ) throws IOException {
-	int chars_read = reader.read( buf, start, BUFFER_LENGTH-start );
-	if ( chars_read < BUFFER_LENGTH-start ) {
-	    buf[chars_read] = 0;
+	int end = start;
+	while ( end < BUFFER_LENGTH ) {
+	    int chars_read = reader.read( buf, end, BUFFER_LENGTH-end );
+	    if ( chars_read < 0 ) {
+		break;
+	    }
+	    end += chars_read;
+	}
+	if ( end < BUFFER_LENGTH ) {
+	    buf[end] = 0;
 	}
     }
 }
@@ -0,0 +1,195 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the dictionary of the terms seen while indexing.
+ * tokens are looked up as spans of the tokenizer buffer, so a String
+ * is only created the first time a term is seen.
+ */
+
+package ir;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ *   Maps each term to a dense integer termID, and back.
+ *
+ *   The terms are kept in an open-addressing hash table. Lookups do not
+ *   lock, so the indexing threads can share one dictionary: a term is
+ *   stored before the slot pointing to it is set, and a grown table is
+ *   filled before it is published. Adding a new term is synchronized.
+ */
+public class TermDictionary {
+
+    /** The initial number of slots, a power of two. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The current table, replaced when it gets half full. */
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /** The number of terms. */
+    private volatile int size = 0;
+
+    /**
+     *  Returns the termID of the term buf[start..start+length), adding
+     *  the term if it is new.
+     */
+    public int add(char[] buf, int start, int length) {
+    	int hash = hash(buf, start, length);
+    	int termID = find(table, hash, buf, start, length);
+    	if (termID >= 0) {
+    		return termID;
+    	}
+    	synchronized (this) {
+    		Table t = table;
+    		termID = find(t, hash, buf, start, length);
+    		if (termID >= 0) {
+    			return termID;
+    		}
+    		// another thread may have added it meanwhile.
+    		if (size == t.terms.length) {
+    			t = grow(t);
+    			table = t;
+    		}
+    		termID = size;
+    		t.terms[termID] = new String(buf, start, length);
+    		t.hashes[termID] = hash;
+    		t.slots.set(emptySlot(t, hash), termID + 1);
+    		size = termID + 1;
+    		return termID;
+    	}
+    }
+
+    /**
+     *  Returns the termID of term, adding the term if it is new.
+     */
+    public int add(String term) {
+    	int termID = lookup(term);
+    	if (termID >= 0) {
+    		return termID;
+    	}
+    	char[] chars = term.toCharArray();
+    	return add(chars, 0, chars.length);
+    }
+
+    /**
+     *  Returns the termID of term, or -1 if it is not in the dictionary.
+     */
+    public int lookup(String term) {
+    	int hash = term.hashCode();
+    	Table t = table;
+    	int mask = t.slots.length() - 1;
+    	for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+    		int termID = t.slots.get(i) - 1;
+    		if (termID < 0) {
+    			return -1;
+    		}
+    		if (t.hashes[termID] == hash && t.terms[termID].equals(term)) {
+    			return termID;
+    		}
+    	}
+    }
+
+    /**
+     *  Returns the term of termID.
+     */
+    public String getTerm(int termID) {
+    	return table.terms[termID];
+    }
+
+    /**
+     *  Returns the number of terms.
+     */
+    public int size() {
+    	return size;
+    }
+
+    private static int find(Table t, int hash, char[] buf, int start, int length) {
+    	int mask = t.slots.length() - 1;
+    	for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+    		int termID = t.slots.get(i) - 1;
+    		if (termID < 0) {
+    			return -1;
+    		}
+    		if (t.hashes[termID] == hash && equals(t.terms[termID], buf, start, length)) {
+    			return termID;
+    		}
+    	}
+    }
+
+    private static int emptySlot(Table t, int hash) {
+    	int mask = t.slots.length() - 1;
+    	int i = spread(hash) & mask;
+    	while (t.slots.get(i) != 0) {
+    		i = (i + 1) & mask;
+    	}
+    	return i;
+    }
+
+    /**
+     *  Returns a table with twice the slots, holding the same terms.
+     */
+    private static Table grow(Table t) {
+    	Table bigger = new Table(t.slots.length() * 2);
+    	System.arraycopy(t.terms, 0, bigger.terms, 0, t.terms.length);
+    	System.arraycopy(t.hashes, 0, bigger.hashes, 0, t.hashes.length);
+    	for (int termID = 0; termID < t.terms.length; termID++) {
+    		bigger.slots.set(emptySlot(bigger, t.hashes[termID]), termID + 1);
+    	}
+    	return bigger;
+    }
+
+    /**
+     *  The same hash as String.hashCode(), so lookup() can use the
+     *  hash cached in the String.
+     */
+    private static int hash(char[] buf, int start, int length) {
+    	int hash = 0;
+    	for (int i = start; i < start + length; i++) {
+    		hash = 31 * hash + buf[i];
+    	}
+    	return hash;
+    }
+
+    /** Mixes the high bits of hash into the low bits used as slot. */
+    private static int spread(int hash) {
+    	return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String term, char[] buf, int start, int length) {
+    	if (term.length() != length) {
+    		return false;
+    	}
+    	for (int i = 0; i < length; i++) {
+    		if (term.charAt(i) != buf[start + i]) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+
+    /**
+     *   The slots hold termID + 1, or 0 when empty. There is room for
+     *   half as many terms as slots.
+     */
+    private static class Table {
+
+    	final AtomicIntegerArray slots;
+    	final String[] terms;
+    	final int[] hashes;
+
+    	Table(int capacity) {
+    		slots = new AtomicIntegerArray(capacity);
+    		terms = new String[capacity / 2];
+    		hashes = new int[capacity / 2];
+    	}
+    }
+
+}
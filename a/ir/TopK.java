@@ -0,0 +1,143 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the k best documents of a ranked query.
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   Keeps the k best of the documents offered to it in a min-heap, the
+ *   worst of the k on top, so offering a document takes O(log k).
+ *   A document ranks before another one if it has a higher score, or
+ *   the same score and a lower docID.
+ */
+public class TopK {
+
+    private int k;
+    private int[] docIDs;
+    private double[] scores;
+    private int size = 0;
+
+    public TopK(int k) {
+    	this.k = k;
+    	docIDs = new int[Math.max(1, Math.min(k, 1024))];
+    	scores = new double[docIDs.length];
+    }
+
+    /**
+     *  Keeps docID if it ranks among the k best so far.
+     *
+     *  @return true if it was kept.
+     */
+    public boolean offer(int docID, double score) {
+    	if (size < k) {
+    		if (size == docIDs.length) {
+    			int length = (int) Math.min(k, 2L * size);
+    			docIDs = Arrays.copyOf(docIDs, length);
+    			scores = Arrays.copyOf(scores, length);
+    		}
+    		docIDs[size] = docID;
+    		scores[size] = score;
+    		siftUp(size++);
+    		return true;
+    	}
+    	if (k == 0 || !better(docID, score, docIDs[0], scores[0])) {
+    		return false;
+    	}
+    	docIDs[0] = docID;
+    	scores[0] = score;
+    	siftDown(0, size);
+    	return true;
+    }
+
+    /**
+     *  Returns the score a document has to beat to be kept, or negative
+     *  infinity while fewer than k documents are kept. A document with
+     *  the same score is kept only if it has a lower docID than the
+     *  worst one kept.
+     */
+    public double threshold() {
+    	return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+    	return size;
+    }
+
+    /**
+     *  Returns the documents kept, best first, with their scores.
+     */
+    public PostingsList toPostingsList() {
+    	int[] foo = Arrays.copyOf(docIDs, size);
+    	double[] bar = Arrays.copyOf(scores, size);
+    	for (int last = size - 1; last > 0; last--) {
+    		swap(0, last);
+    		siftDown(0, last);
+    	}
+    	// popping the worst to the end leaves the best first.
+    	PostingsList list = new PostingsList();
+    	for (int i = 0; i < size; i++) {
+    		list.insert(docIDs[i], 0, scores[i]);
+    	}
+    	docIDs = foo;
+    	scores = bar;
+    	// the heap is restored, so more documents can be offered.
+    	return list;
+    }
+
+    private static boolean better(int docFoo, double scoreFoo, int docBar, double scoreBar) {
+    	if (scoreFoo != scoreBar) {
+    		return scoreFoo > scoreBar;
+    	}
+    	return docFoo < docBar;
+    }
+
+    private void siftUp(int i) {
+    	while (i > 0) {
+    		int parent = (i - 1) / 2;
+    		if (!better(docIDs[parent], scores[parent], docIDs[i], scores[i])) {
+    			break;
+    		}
+    		swap(parent, i);
+    		i = parent;
+    	}
+    }
+
+    private void siftDown(int i, int n) {
+    	while (true) {
+    		int worst = i;
+    		int left = 2 * i + 1;
+    		if (left < n && better(docIDs[worst], scores[worst], docIDs[left], scores[left])) {
+    			worst = left;
+    		}
+    		if (left + 1 < n && better(docIDs[worst], scores[worst], docIDs[left + 1], scores[left + 1])) {
+    			worst = left + 1;
+    		}
+    		if (worst == i) {
+    			return;
+    		}
+    		swap(worst, i);
+    		i = worst;
+    	}
+    }
+
+    private void swap(int i, int j) {
+    	int foo = docIDs[i];
+    	docIDs[i] = docIDs[j];
+    	docIDs[j] = foo;
+    	double bar = scores[i];
+    	scores[i] = scores[j];
+    	scores[j] = bar;
+    }
+
+}
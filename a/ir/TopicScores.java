@@ -0,0 +1,156 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   First version:  Johan Boye, 2010
+ *   Second version: Johan Boye, 2012
+ */  
+
+/*
+ * the topic sensitive pageranks, blended by the topics of a query.
+ */
+
+package ir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ *   Holds the topic sensitive PageRank of each topic, read from the
+ *   files "topic.score" of a directory, written by pr.TopicRank in the
+ *   format of PageRankScores.<p>
+ *
+ *   The PageRank of a blend of topics is the blend of their PageRanks,
+ *   so a query with topic weights gets its personalized PageRank from
+ *   the precomputed ones (see blend()), for a few multiplications per
+ *   document. PageRank is never run at query time: a topic with no file
+ *   is ignored.
+ */
+public class TopicScores {
+
+    /** The directory written by pr.TopicRank, relative to the working directory. */
+    public static final String TOPIC_DIR = "./ir/topics";
+
+    /** The suffix of a topic file, after the name of the topic. */
+    public static final String SUFFIX = ".score";
+
+    private File dir;
+
+    /** The modification time of the directory when it was listed. */
+    private long lastModified = -1;
+
+    /** The scores of each topic. */
+    private volatile HashMap<String, PageRankScores> topics = new HashMap<String, PageRankScores>();
+
+    /** Incremented whenever the directory is listed again. */
+    private volatile int version = 0;
+
+    public TopicScores(File dir) {
+    	this.dir = dir;
+    }
+
+    /**
+     *  Lists the directory again if a topic file has been added or
+     *  replaced, and rereads the topic files that have changed.
+     */
+    public synchronized void refresh() {
+    	long modified = dir.lastModified();
+    	if (modified != lastModified) {
+    		HashMap<String, PageRankScores> foo = new HashMap<String, PageRankScores>();
+    		File[] files = dir.listFiles();
+    		if (files != null) {
+    			for (File file : files) {
+    				String name = file.getName();
+    				if (name.endsWith(SUFFIX) && file.isFile()) {
+    					String topic = name.substring(0, name.length() - SUFFIX.length());
+    					PageRankScores scores = topics.get(topic);
+    					foo.put(topic, scores != null ? scores : new PageRankScores(file));
+    				}
+    			}
+    		}
+    		topics = foo;
+    		version++;
+    		lastModified = modified;
+    	}
+    	for (PageRankScores scores : topics.values()) {
+    		scores.refresh();
+    	}
+    }
+
+    /**
+     *  Returns a number that changes whenever refresh() finds new
+     *  topics or reads new scores of a topic.
+     */
+    public int getVersion() {
+    	int foo = version;
+    	for (PageRankScores scores : topics.values()) {
+    		foo = 31 * foo + scores.getVersion();
+    	}
+    	return foo;
+    }
+
+    /**
+     *  Returns the topics, sorted.
+     */
+    public String[] getTopics() {
+    	String[] foo = topics.keySet().toArray(new String[0]);
+    	Arrays.sort(foo);
+    	return foo;
+    }
+
+    /**
+     *  Returns the blend of the topics by weights, scaled to sum to 1,
+     *  or null if none of the topics is known.
+     */
+    public Blend blend(Map<String, Double> weights) {
+    	HashMap<String, PageRankScores> foo = topics;
+    	PageRankScores[] scores = new PageRankScores[weights.size()];
+    	double[] bar = new double[weights.size()];
+    	double sum = 0;
+    	int m = 0;
+    	for (Map.Entry<String, Double> entry : weights.entrySet()) {
+    		PageRankScores hoge = foo.get(entry.getKey());
+    		if (hoge != null && entry.getValue() > 0) {
+    			scores[m] = hoge;
+    			bar[m++] = entry.getValue();
+    			sum += entry.getValue();
+    		}
+    	}
+    	if (m == 0) {
+    		return null;
+    	}
+    	for (int t = 0; t < m; t++) {
+    		bar[t] /= sum;
+    	}
+    	return new Blend(Arrays.copyOf(scores, m), Arrays.copyOf(bar, m));
+    }
+
+    /**
+     *   The PageRank of a blend of topics.
+     */
+    public static class Blend {
+
+    	private PageRankScores[] scores;
+    	private double[] weights;
+
+    	Blend(PageRankScores[] scores, double[] weights) {
+    		this.scores = scores;
+    		this.weights = weights;
+    	}
+
+    	/**
+    	 *  Returns the blended PageRank of docID.
+    	 */
+    	public float getScore(int docID) {
+    		double sum = 0;
+    		for (int t = 0; t < scores.length; t++) {
+    			sum += weights[t] * scores[t].getScore(docID);
+    		}
+    		return (float) sum;
+    	}
+    }
+
+}
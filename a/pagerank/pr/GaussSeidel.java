@@ -0,0 +1,105 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the gauss-seidel iteration over the sparse link graph.
+ */
+
+package pr;
+
+import java.util.Arrays;
+
+
+/**
+ *   Computes PageRank by Gauss-Seidel sweeps over a LinkGraph. As in
+ *   PowerIteration the rank of document i is pulled from its inlinks,
+ *   but in place: the documents before i already have their new rank
+ *   in the sweep, and the sum of the ranks and the rank of the sinks
+ *   are kept up to date as the ranks change. The new ranks are used as
+ *   soon as they are known, which takes about half the sweeps of the
+ *   power iteration.<p>
+ *
+ *   A sweep depends on the order of the documents, so it runs in one
+ *   thread. The ranks are scaled to sum to 1 after each sweep, and the
+ *   iteration stops when the L1 distance between two sweeps is below
+ *   epsilon.
+ */
+public class GaussSeidel {
+
+    private LinkGraph graph;
+    private double bored;
+    private double epsilon;
+    private int maxIterations;
+
+    /** The number of sweeps and the last L1 distance of compute(). */
+    private int iterations = 0;
+    private double residual = Double.POSITIVE_INFINITY;
+
+    public GaussSeidel(LinkGraph graph, double bored, double epsilon, int maxIterations) {
+    	this.graph = graph;
+    	this.bored = bored;
+    	this.epsilon = epsilon;
+    	this.maxIterations = maxIterations;
+    }
+
+    /**
+     *  Sweeps from the uniform distribution until convergence, or at
+     *  most maxIterations times.
+     *
+     *  @return the rank of each document, summing to 1.
+     */
+    public double[] compute() {
+    	int n = graph.numberOfDocs;
+    	double[] foo = new double[n];
+    	Arrays.fill(foo, 1.0 / n);
+    	double[] bar = new double[n];
+    	// the ranks before the sweep.
+    	boolean[] sink = new boolean[n];
+    	for (int i : graph.sinks) {
+    		sink[i] = true;
+    	}
+    	iterations = 0;
+    	residual = Double.POSITIVE_INFINITY;
+    	while (residual >= epsilon && iterations < maxIterations) {
+    		System.arraycopy(foo, 0, bar, 0, n);
+    		double total = 1;
+    		double dangling = 0;
+    		for (int i : graph.sinks) {
+    			dangling += foo[i];
+    		}
+    		for (int i = 0; i < n; i++) {
+    			double pulled = 0;
+    			for (int p = graph.inOffsets[i]; p < graph.inOffsets[i + 1]; p++) {
+    				int j = graph.inLinks[p];
+    				pulled += foo[j] / graph.outDegree(j);
+    			}
+    			double rank = (bored * total + (1 - bored) * dangling) / n + (1 - bored) * pulled;
+    			total += rank - foo[i];
+    			if (sink[i]) {
+    				dangling += rank - foo[i];
+    			}
+    			foo[i] = rank;
+    		} // for
+    		residual = 0;
+    		for (int i = 0; i < n; i++) {
+    			foo[i] /= total;
+    			residual += Math.abs(foo[i] - bar[i]);
+    		}
+    		iterations++;
+    	} // while
+    	return foo;
+    }
+
+    public int getIterations() {
+    	return iterations;
+    }
+
+    public double getResidual() {
+    	return residual;
+    }
+
+}
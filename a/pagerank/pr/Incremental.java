@@ -0,0 +1,165 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the pagerank of a changed link file, from the previous pagerank.
+ */
+
+package pr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ *   Updates the PageRank after a change of the links. The links of the
+ *   link file (read from its cache) are changed by a delta file (see
+ *   LinkFile.apply()), and the power iteration starts from the ranks of
+ *   the previous run, saved next to the link file (see RANK_SUFFIX).
+ *   When a small part of the links has changed the previous ranks are
+ *   close to the new ones, and the iteration stops after a few steps.<p>
+ *
+ *   The changed links are written to a separate output link file, and
+ *   the link file itself is never changed, so that running the same
+ *   update again gives the same links. The new ranks are saved next to
+ *   the output link file, where the next update starts from, and are
+ *   exported to the search engine.
+ */
+public class Incremental {
+
+    /** The suffix of the rank file, after the name of the link file. */
+    public static final String RANK_SUFFIX = ".rank";
+
+    /** Identifies the rank file format, changed with the format. */
+    private static final int MAGIC = 0x50524B52;
+
+    /**
+     *  Applies delta to the links of filename, writes the changed links
+     *  to output and updates the ranks. The ranks of a previous update
+     *  (next to output) are preferred to those of filename.
+     */
+    public static void update(String filename, File delta, String output, int numThreads, ScoreExport export) throws IOException {
+    	long dateFoo = System.currentTimeMillis();
+    	if (new File(filename).getCanonicalFile().equals(new File(output).getCanonicalFile())) {
+    		throw new IOException("The output link file must not be the link file: " + output);
+    	}
+    	LinkFile links = LinkFile.read(filename);
+    	LinkFile updated = links.apply(delta);
+    	File rankFile = new File(output + RANK_SUFFIX);
+    	double[] previous = null;
+    	if (rankFile.isFile()) {
+    		previous = readRanks(rankFile, updated.docName);
+    	} else if (new File(filename + RANK_SUFFIX).isFile()) {
+    		previous = readRanks(new File(filename + RANK_SUFFIX), updated.docName);
+    	}
+    	int n = updated.graph.numberOfDocs;
+    	System.err.println("Applied " + delta + ": " + links.graph.numberOfLinks() + " -> "
+    			+ updated.graph.numberOfLinks() + " links, " + n + " documents");
+
+    	double[] start = new double[n];
+    	double sum = 0;
+    	for (int i = 0; i < n; i++) {
+    		start[i] = previous != null && !Double.isNaN(previous[i]) ? previous[i] : 1.0 / n;
+    		sum += start[i];
+    	}
+    	for (int i = 0; i < n; i++) {
+    		start[i] /= sum;
+    	}
+    	// the documents keep their numbers, the new ones start uniform.
+
+    	PowerIteration engine = new PowerIteration(updated.graph, PageRank.BORED,
+    			PageRank.EPSILON, PageRank.MAX_NUMBER_OF_ITERATIONS, numThreads);
+    	double[] rank = engine.compute(start);
+    	System.err.println("iterations: " + engine.getIterations() + ", residual: " + engine.getResidual()
+    			+ (previous == null ? " (no previous ranks)" : ""));
+
+    	updated.write(output);
+    	writeRanks(rankFile, updated.docName, rank);
+    	export.export(rank, updated.docName);
+    	System.err.println("time elapsed: " + (System.currentTimeMillis() - dateFoo) + " ms");
+    }
+
+    /**
+     *  Writes the rank of each document with its name, so that the
+     *  ranks can be read back whatever the numbering of the documents.
+     */
+    static void writeRanks(File file, String[] docName, double[] rank) throws IOException {
+    	File tmp = new File(file.getPath() + ".tmp");
+    	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    			new FileOutputStream(tmp), 1 << 16));
+    	try {
+    		out.writeInt(MAGIC);
+    		out.writeInt(rank.length);
+    		for (int i = 0; i < rank.length; i++) {
+    			out.writeUTF(docName[i]);
+    			out.writeDouble(rank[i]);
+    		}
+    	} finally {
+    		out.close();
+    	}
+    	if (!tmp.renameTo(file)) {
+    		file.delete();
+    		if (!tmp.renameTo(file)) {
+    			throw new IOException("Cannot rename " + tmp + " to " + file);
+    		}
+    	}
+    }
+
+    /**
+     *  Reads the ranks written by writeRanks(), by the numbers of
+     *  docName. The documents not in the file get NaN.
+     */
+    static double[] readRanks(File file, String[] docName) throws IOException {
+    	HashMap<String, Integer> docNumber = new HashMap<String, Integer>();
+    	for (int i = 0; i < docName.length; i++) {
+    		docNumber.put(docName[i], i);
+    	}
+    	double[] rank = new double[docName.length];
+    	Arrays.fill(rank, Double.NaN);
+    	DataInputStream in = new DataInputStream(new BufferedInputStream(
+    			new FileInputStream(file), 1 << 16));
+    	try {
+    		if (in.readInt() != MAGIC) {
+    			throw new IOException("Not a rank file: " + file);
+    		}
+    		int n = in.readInt();
+    		for (int k = 0; k < n; k++) {
+    			Integer i = docNumber.get(in.readUTF());
+    			double foo = in.readDouble();
+    			if (i != null) {
+    				rank[i] = foo;
+    			}
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	return rank;
+    }
+
+    public static void main(String[] args) throws IOException {
+    	if (args.length < 3) {
+    		System.err.println("Please give the name of the link file, of the delta file and of the output link file");
+    		return;
+    	}
+    	int numThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    	ScoreExport export = args.length > 4
+    			? new ScoreExport(new File(args[4]),
+    					new File(args.length > 5 ? args[5] : ir.PageRankScores.SCORE_FILE),
+    					args.length > 6 ? new File(args[6]) : null)
+    			: new ScoreExport();
+    	update(args[0], new File(args[1]), args[2], numThreads, export);
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the link file, read into a LinkGraph.
+ */
+
+package pr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ *   Reads a link file with a line "title;out1,out2,..." per document
+ *   into the names of the documents and a LinkGraph.<p>
+ *
+ *   The file is streamed line by line. The links are kept as longs
+ *   (from << 32 | to) in one growing array, which is sorted to drop
+ *   the duplicate links before the graph is built, so a link takes 8
+ *   bytes while reading instead of a Hashtable entry.<p>
+ *
+ *   The result is cached in a binary file next to the link file (see
+ *   CACHE_SUFFIX), which is read instead of the link file as long as
+ *   it is newer.<p>
+ *
+ *   A delta file of added and removed links can be applied with
+ *   apply(), and the result written back with write().
+ */
+public class LinkFile {
+
+    /** The suffix of the cache file, after the name of the link file. */
+    public static final String CACHE_SUFFIX = ".graph";
+
+    /** Identifies the cache file format, changed with the format. */
+    private static final int MAGIC = 0x50524731;
+
+    /** The name of each document number. */
+    final String[] docName;
+
+    /** The links between the document numbers. */
+    final LinkGraph graph;
+
+    private LinkFile(String[] docName, LinkGraph graph) {
+    	this.docName = docName;
+    	this.graph = graph;
+    }
+
+    /**
+     *  Reads the links of filename, from the cache if it is newer than
+     *  the file, or else from the file, writing the cache.
+     */
+    public static LinkFile read(String filename) throws IOException {
+    	File file = new File(filename);
+    	File cache = new File(filename + CACHE_SUFFIX);
+    	if (cache.isFile() && cache.lastModified() >= file.lastModified()) {
+    		try {
+    			return readCache(cache);
+    		} catch (IOException e) {
+    			System.err.print( "unreadable cache " + cache + ", " );
+    		}
+    	}
+    	LinkFile links = parse(file);
+    	try {
+    		links.writeCache(cache);
+    	} catch (IOException e) {
+    		System.err.print( "could not write cache " + cache + ", " );
+    	}
+    	return links;
+    }
+
+    /**
+     *  Reads the link file.
+     */
+    static LinkFile parse(File file) throws IOException {
+    	Builder builder = new Builder();
+    	BufferedReader in = new BufferedReader(new FileReader(file), 1 << 16);
+    	try {
+    		String line;
+    		while ((line = in.readLine()) != null) {
+    			builder.line(line, false);
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	return builder.build();
+    }
+
+    /**
+     *  Returns these links changed by a delta file. A line "+title;out1,
+     *  out2,..." adds the links from title to the outs, and a line
+     *  "-title;out1,out2,..." removes them. New titles get the next
+     *  numbers, so the old documents keep theirs.
+     */
+    public LinkFile apply(File delta) throws IOException {
+    	Builder builder = new Builder();
+    	for (String name : docName) {
+    		builder.number(name);
+    	}
+    	for (int i = 0; i < graph.numberOfDocs; i++) {
+    		for (int p = graph.outOffsets[i]; p < graph.outOffsets[i + 1]; p++) {
+    			builder.link(i, graph.outLinks[p], false);
+    		}
+    	}
+    	BufferedReader in = new BufferedReader(new FileReader(delta), 1 << 16);
+    	try {
+    		String line;
+    		while ((line = in.readLine()) != null) {
+    			if (line.startsWith("+")) {
+    				builder.line(line.substring(1), false);
+    			} else if (line.startsWith("-")) {
+    				builder.line(line.substring(1), true);
+    			}
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	return builder.build();
+    }
+
+    /**
+     *  Writes the links as a link file, through a temporary file, and
+     *  the cache of the new file.
+     */
+    public void write(String filename) throws IOException {
+    	File file = new File(filename);
+    	File tmp = new File(filename + ".tmp");
+    	PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp), 1 << 16));
+    	try {
+    		for (int i = 0; i < graph.numberOfDocs; i++) {
+    			out.print(docName[i]);
+    			out.print(';');
+    			for (int p = graph.outOffsets[i]; p < graph.outOffsets[i + 1]; p++) {
+    				if (p > graph.outOffsets[i]) {
+    					out.print(',');
+    				}
+    				out.print(docName[graph.outLinks[p]]);
+    			}
+    			out.println();
+    		}
+    	} finally {
+    		out.close();
+    	}
+    	rename(tmp, file);
+    	writeCache(new File(filename + CACHE_SUFFIX));
+    }
+
+    /**
+     *   Collects the titles and the links of a link file, numbering the
+     *   titles in the order they are met.
+     */
+    private static class Builder {
+
+    	private HashMap<String, Integer> docNumber = new HashMap<String, Integer>();
+    	private String[] docName = new String[1024];
+
+    	/** The links and the removed links, as from << 32 | to. */
+    	private long[] links = new long[1024];
+    	private int numberOfLinks = 0;
+    	private long[] removed = new long[0];
+    	private int numberOfRemoved = 0;
+
+    	/**
+    	 *  Adds (or removes) the links of a line "title;out1,out2,...".
+    	 */
+    	void line(String line, boolean remove) {
+    		int index = line.indexOf(';');
+    		if (index < 0) {
+    			return;
+    		}
+    		int from = number(line.substring(0, index));
+    		// check all outlinks.
+    		int start = index + 1;
+    		while (start < line.length()) {
+    			int end = line.indexOf(',', start);
+    			if (end < 0) {
+    				end = line.length();
+    			}
+    			if (end > start) {
+    				link(from, number(line.substring(start, end)), remove);
+    			}
+    			start = end + 1;
+    		} // while
+    	}
+
+    	/**
+    	 *  Returns the number of title, giving it the next number if it
+    	 *  has none yet.
+    	 */
+    	int number(String title) {
+    		Integer number = docNumber.get(title);
+    		if (number == null) {
+    			number = docNumber.size();
+    			docNumber.put(title, number);
+    			if (number == docName.length) {
+    				docName = Arrays.copyOf(docName, 2 * number);
+    			}
+    			docName[number] = title;
+    		}
+    		return number;
+    	}
+
+    	void link(int from, int to, boolean remove) {
+    		long link = (long) from << 32 | to;
+    		if (remove) {
+    			if (numberOfRemoved == removed.length) {
+    				removed = Arrays.copyOf(removed, Math.max(16, 2 * numberOfRemoved));
+    			}
+    			removed[numberOfRemoved++] = link;
+    		} else {
+    			if (numberOfLinks == links.length) {
+    				links = Arrays.copyOf(links, 2 * numberOfLinks);
+    			}
+    			links[numberOfLinks++] = link;
+    		}
+    	}
+
+    	/**
+    	 *  Returns the links sorted, each link once, without the removed
+    	 *  links.
+    	 */
+    	LinkFile build() {
+    		Arrays.sort(links, 0, numberOfLinks);
+    		Arrays.sort(removed, 0, numberOfRemoved);
+    		int[] from = new int[numberOfLinks];
+    		int[] to = new int[numberOfLinks];
+    		int m = 0;
+    		for (int e = 0; e < numberOfLinks; e++) {
+    			if ((e == 0 || links[e] != links[e - 1])
+    					&& Arrays.binarySearch(removed, 0, numberOfRemoved, links[e]) < 0) {
+    				from[m] = (int) (links[e] >>> 32);
+    				to[m++] = (int) links[e];
+    			}
+    		}
+    		int n = docNumber.size();
+    		return new LinkFile(Arrays.copyOf(docName, n), new LinkGraph(n, from, to, m));
+    	}
+    }
+
+    /**
+     *  Writes the names and the links to cache, through a temporary
+     *  file, so an interrupted write leaves no broken cache.
+     */
+    void writeCache(File cache) throws IOException {
+    	File tmp = new File(cache.getPath() + ".tmp");
+    	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    			new FileOutputStream(tmp), 1 << 16));
+    	try {
+    		out.writeInt(MAGIC);
+    		out.writeInt(graph.numberOfDocs);
+    		out.writeInt(graph.numberOfLinks());
+    		for (String name : docName) {
+    			out.writeUTF(name);
+    		}
+    		for (int i = 0; i < graph.numberOfDocs; i++) {
+    			for (int p = graph.outOffsets[i]; p < graph.outOffsets[i + 1]; p++) {
+    				out.writeInt(i);
+    				out.writeInt(graph.outLinks[p]);
+    			}
+    		}
+    	} finally {
+    		out.close();
+    	}
+    	rename(tmp, cache);
+    }
+
+    private static void rename(File tmp, File file) throws IOException {
+    	if (!tmp.renameTo(file)) {
+    		file.delete();
+    		if (!tmp.renameTo(file)) {
+    			throw new IOException("Cannot rename " + tmp + " to " + file);
+    		}
+    	}
+    }
+
+    /**
+     *  Reads the names and the links written by writeCache().
+     */
+    static LinkFile readCache(File cache) throws IOException {
+    	DataInputStream in = new DataInputStream(new BufferedInputStream(
+    			new FileInputStream(cache), 1 << 16));
+    	try {
+    		if (in.readInt() != MAGIC) {
+    			throw new IOException("Not a link cache: " + cache);
+    		}
+    		int n = in.readInt();
+    		int m = in.readInt();
+    		String[] docName = new String[n];
+    		for (int i = 0; i < n; i++) {
+    			docName[i] = in.readUTF();
+    		}
+    		int[] from = new int[m];
+    		int[] to = new int[m];
+    		for (int e = 0; e < m; e++) {
+    			from[e] = in.readInt();
+    			to[e] = in.readInt();
+    		}
+    		return new LinkFile(docName, new LinkGraph(n, from, to, m));
+    	} finally {
+    		in.close();
+    	}
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the link graph in compressed sparse row form.
+ */
+
+package pr;
+
+
+/**
+ *   Stores the links in compressed sparse row (CSR) form: the links of
+ *   document i are the range offsets[i] to offsets[i + 1] of one int
+ *   array, so a pass over all the links reads a few arrays in order
+ *   instead of looking up a Hashtable per document.<p>
+ *
+ *   Both directions are kept. The outlinks are used by the random
+ *   walks, and the inlinks by the power iteration, which pulls the
+ *   rank of each document from the documents linking to it.
+ */
+public class LinkGraph {
+
+    /** The number of documents, numbered 0 to numberOfDocs - 1. */
+    final int numberOfDocs;
+
+    /** The outlinks: document i links to outLinks[outOffsets[i] .. outOffsets[i + 1] - 1]. */
+    final int[] outOffsets;
+    final int[] outLinks;
+
+    /** The inlinks: document i is linked from inLinks[inOffsets[i] .. inOffsets[i + 1] - 1]. */
+    final int[] inOffsets;
+    final int[] inLinks;
+
+    /** The documents with no outlinks. */
+    final int[] sinks;
+
+    /**
+     *  Creates the graph of the links from[e] -> to[e], for e below
+     *  numberOfLinks. A link must not be given twice.
+     */
+    public LinkGraph(int numberOfDocs, int[] from, int[] to, int numberOfLinks) {
+    	this.numberOfDocs = numberOfDocs;
+    	outOffsets = offsets(from, numberOfDocs, numberOfLinks);
+    	outLinks = group(from, to, outOffsets, numberOfLinks);
+    	inOffsets = offsets(to, numberOfDocs, numberOfLinks);
+    	inLinks = group(to, from, inOffsets, numberOfLinks);
+    	int numberOfSinks = 0;
+    	for (int i = 0; i < numberOfDocs; i++) {
+    		if (outDegree(i) == 0) {
+    			numberOfSinks++;
+    		}
+    	}
+    	sinks = new int[numberOfSinks];
+    	for (int i = 0, k = 0; i < numberOfDocs; i++) {
+    		if (outDegree(i) == 0) {
+    			sinks[k++] = i;
+    		}
+    	}
+    }
+
+    public int numberOfDocs() {
+    	return numberOfDocs;
+    }
+
+    public int numberOfLinks() {
+    	return outLinks.length;
+    }
+
+    public int outDegree(int i) {
+    	return outOffsets[i + 1] - outOffsets[i];
+    }
+
+    /**
+     *  Returns where the group of each key starts in the grouped array,
+     *  and the total at the end, by counting the keys.
+     */
+    private static int[] offsets(int[] keys, int n, int m) {
+    	int[] offsets = new int[n + 1];
+    	for (int e = 0; e < m; e++) {
+    		offsets[keys[e] + 1]++;
+    	}
+    	for (int i = 0; i < n; i++) {
+    		offsets[i + 1] += offsets[i];
+    	}
+    	return offsets;
+    }
+
+    /**
+     *  Returns the values grouped by their keys, in the order they were
+     *  given within a group (a counting sort).
+     */
+    private static int[] group(int[] keys, int[] values, int[] offsets, int m) {
+    	int[] next = new int[offsets.length - 1];
+    	System.arraycopy(offsets, 0, next, 0, next.length);
+    	int[] grouped = new int[m];
+    	for (int e = 0; e < m; e++) {
+    		grouped[next[keys[e]]++] = values[e];
+    	}
+    	return grouped;
+    }
+
+}
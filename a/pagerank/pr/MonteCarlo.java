@@ -0,0 +1,159 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the monte-carlo methods (1 - 5) over the sparse link graph.
+ */
+
+package pr;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *   Estimates PageRank with random walks over the outlinks of a
+ *   LinkGraph. A walk stops with probability BORED at each step, and
+ *   otherwise follows a random outlink, or jumps to a random document
+ *   from a sink (or stops there, for methods 4 and 5). The methods:
+ *
+ *      1 -> end-point with random start, numWalks walks.
+ *      2 -> end-point with cyclic start, numWalks walks per document.
+ *      3 -> complete path with cyclic start.
+ *      4 -> complete path with cyclic start, stopping at sinks.
+ *      5 -> complete path with random start, stopping at sinks.
+ *
+ *   The walks are split in chunks of CHUNK_SIZE walks, each with its
+ *   own SplittableRandom split from one seed in chunk order. The
+ *   threads take chunks and count the visits in their own long[], and
+ *   the counts are added at the end. A walk keeps only its current
+ *   page, so walking allocates nothing, and the result for a given seed
+ *   does not depend on the number of threads.
+ */
+public class MonteCarlo {
+
+    /** The number of walks in a chunk, the unit of work of a thread. */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    private LinkGraph graph;
+    private double bored;
+    private int numThreads;
+    private long seed;
+
+    public MonteCarlo(LinkGraph graph, double bored, int numThreads, long seed) {
+    	this.graph = graph;
+    	this.bored = bored;
+    	this.numThreads = numThreads;
+    	this.seed = seed;
+    }
+
+    /**
+     *  Runs the walks of the given method, 1 to 5.
+     *
+     *  @return the estimated rank of each document, summing to 1.
+     */
+    public double[] compute(final int method, final int numWalks) {
+    	if (method < 1 || method > 5) {
+    		throw new IllegalArgumentException("No such method: " + method);
+    	}
+    	final int n = graph.numberOfDocs;
+    	final boolean randomStart = method == 1 || method == 5;
+    	final boolean completePath = method >= 3;
+    	final boolean stopAtSinks = method >= 4;
+    	final long walks = randomStart ? numWalks : (long) n * numWalks;
+    	final int numChunks = (int) ((walks + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    	final SplittableRandom[] randoms = new SplittableRandom[numChunks];
+    	SplittableRandom root = new SplittableRandom(seed);
+    	for (int c = 0; c < numChunks; c++) {
+    		randoms[c] = root.split();
+    	}
+    	final AtomicInteger next = new AtomicInteger();
+    	// the next chunk to take.
+
+    	ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+    	ArrayList<Future<long[]>> workers = new ArrayList<Future<long[]>>();
+    	for (int t = 0; t < Math.max(1, numThreads); t++) {
+    		workers.add(pool.submit(new Callable<long[]>() {
+    			public long[] call() {
+    				long[] visits = new long[n];
+    				int c;
+    				while ((c = next.getAndIncrement()) < numChunks) {
+    					SplittableRandom random = randoms[c];
+    					long last = Math.min(walks, (c + 1L) * CHUNK_SIZE);
+    					for (long w = (long) c * CHUNK_SIZE; w < last; w++) {
+    						int start = randomStart ? random.nextInt(n) : (int) (w / numWalks);
+    						walk(start, random, visits, completePath, stopAtSinks);
+    					}
+    				}
+    				return visits;
+    			}
+    		}));
+    	}
+
+    	long[] visits = new long[n];
+    	try {
+    		for (Future<long[]> worker : workers) {
+    			long[] foo = worker.get();
+    			for (int i = 0; i < n; i++) {
+    				visits[i] += foo[i];
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	} catch (ExecutionException e) {
+    		throw new RuntimeException(e.getCause());
+    	} finally {
+    		pool.shutdown();
+    	}
+
+    	long total = 0;
+    	for (long foo : visits) {
+    		total += foo;
+    	}
+    	// the number of walks, or of visits for the complete path.
+    	double[] bar = new double[n];
+    	for (int i = 0; i < n; i++) {
+    		bar[i] = total == 0 ? 0 : visits[i] / (double) total;
+    	}
+    	return bar;
+    }
+
+    /**
+     *  Walks from start, counting the end page, or every page visited
+     *  if completePath is true.
+     */
+    private void walk(int start, SplittableRandom random, long[] visits, boolean completePath, boolean stopAtSinks) {
+    	int page = start;
+    	if (completePath) {
+    		visits[page]++;
+    	}
+    	while (random.nextDouble() >= bored) {
+    		int from = graph.outOffsets[page];
+    		int out = graph.outOffsets[page + 1] - from;
+    		if (out == 0) {
+    			if (stopAtSinks) {
+    				break;
+    			}
+    			page = random.nextInt(graph.numberOfDocs);
+    		} else {
+    			page = graph.outLinks[from + random.nextInt(out)];
+    		}
+    		if (completePath) {
+    			visits[page]++;
+    		}
+    	} // while
+    	if (!completePath) {
+    		visits[page]++;
+    	}
+    }
+
+}
@@ -12,44 +12,21 @@ import java.io.*;
 
 public class PageRank{
 
-    /**  
-     *   Maximal number of documents. We're assuming here that we
-     *   don't have more docs than we can keep in main memory.
-     */
-    final static int MAX_NUMBER_OF_DOCS = 2000000;
-
-    /**
-     *   Mapping from document names to document numbers.
-     */
-    Hashtable<String,Integer> docNumber = new Hashtable<String,Integer>();
-
     /**
      *   Mapping from document numbers to document names
      */
-    String[] docName = new String[MAX_NUMBER_OF_DOCS];
-
-    /**  
-     *   A memory-efficient representation of the transition matrix.
-     *   The outlinks are represented as a Hashtable, whose keys are 
-     *   the numbers of the documents linked from.<p>
-     *
-     *   The value corresponding to key i is a Hashtable whose keys are 
-     *   all the numbers of documents j that i links to.<p>
-     *
-     *   If there are no outlinks from i, then the value corresponding 
-     *   key i is null.
-     */
-    Hashtable<Integer,Hashtable<Integer,Boolean>> link = new Hashtable<Integer,Hashtable<Integer,Boolean>>();
+    String[] docName = new String[0];
 
     /**
-     *   The number of outlinks from each node.
+     *   The number of documents with no outlinks.
      */
-    int[] out = new int[MAX_NUMBER_OF_DOCS];
+    int numberOfSinks = 0;
 
     /**
-     *   The number of documents with no outlinks.
+     *   The links in compressed sparse row form, read from the link
+     *   file (or its cache, see LinkFile).
      */
-    int numberOfSinks = 0;
+    LinkGraph graph = new LinkGraph(0, new int[0], new int[0], 0);
 
     /**
      *   The probability that the surfer will be bored, stop
@@ -69,6 +46,29 @@ public class PageRank{
      */
     final static int MAX_NUMBER_OF_ITERATIONS = 1000;
 
+    /**
+     *   The number of power iterations between two quadratic
+     *   extrapolations of method 8.
+     */
+    final static int EXTRAPOLATION_PERIOD = 10;
+
+    /**
+     *   The number of threads of the power iteration and the random
+     *   walks. The result is the same for any number of threads.
+     */
+    int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     *   The name of the link file, next to which methods 0 and 6 save
+     *   the ranks for Incremental.
+     */
+    String linkFile;
+
+    /**
+     *   Where method 6 writes the ranks for the search engine.
+     */
+    ScoreExport export = new ScoreExport();
+
     
     /* --------------------------------------------- */
 
@@ -80,9 +80,22 @@ public class PageRank{
 	 * 3 -> mc, cmoplete path
 	 * 4 -> mc, complete path stopping at dangling nodes
 	 * 5 -> mc, complete path with random start
-	 * 6 -> cpt w/pi, write to file.
+	 * 6 -> cpt w/pi, export to the search engine (see ScoreExport).
+	 * 7 -> computing w/gauss-seidel sweeps.
+	 * 8 -> computing w/pi and quadratic extrapolation.
 	 */
     public PageRank(String filename, String method) {
+    	this(filename, method, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PageRank(String filename, String method, int numThreads) {
+    	this(filename, method, numThreads, new ScoreExport());
+    }
+
+    public PageRank(String filename, String method, int numThreads, ScoreExport export) {
+    	this.numThreads = numThreads;
+    	this.export = export;
+    	this.linkFile = filename;
     	int noOfDocs = readDocs( filename );
     	computePagerank(noOfDocs, method);
     }
@@ -93,63 +106,21 @@ public class PageRank{
 
     /**
      *   Reads the documents and creates the docs table. When this method 
-     *   finishes executing then the @code{out} vector of outlinks is 
-     *   initialised for each doc, and the @code{p} matrix is filled with
-     *   zeroes (that indicate direct links) and NO_LINK (if there is no
-     *   direct link. <p>
+     *   finishes executing then the @code{docName} table and the link
+     *   graph are filled in. The links are streamed into a primitive
+     *   array instead of a table per document, so there is no limit on
+     *   the number of documents but the heap. <p>
      *
      *   @return the number of documents read.
      */
     int readDocs( String filename ) {
-		int fileIndex = 0;
 		try {
 		    System.err.print( "Reading file... " );
-		    BufferedReader in = new BufferedReader( new FileReader( filename ));
-		    String line;
-		    while ((line = in.readLine()) != null && fileIndex<MAX_NUMBER_OF_DOCS ) {
-				int index = line.indexOf( ";" );
-				String title = line.substring( 0, index );
-				Integer fromdoc = docNumber.get( title );
-				//  Have we seen this document before?
-				if ( fromdoc == null ) {	
-				    // This is a previously unseen doc, so add it to the table.
-				    fromdoc = fileIndex++;
-				    docNumber.put( title, fromdoc );
-				    docName[fromdoc] = title;
-				}
-				// Check all outlinks.
-				StringTokenizer tok = new StringTokenizer( line.substring(index+1), "," );
-				while ( tok.hasMoreTokens() && fileIndex<MAX_NUMBER_OF_DOCS ) {
-				    String otherTitle = tok.nextToken();
-				    Integer otherDoc = docNumber.get( otherTitle );
-				    if ( otherDoc == null ) {
-					// This is a previousy unseen doc, so add it to the table.
-						otherDoc = fileIndex++;
-						docNumber.put( otherTitle, otherDoc );
-						docName[otherDoc] = otherTitle;
-				    }
-				    // Set the probability to 0 for now, to indicate that there is
-				    // a link from fromdoc to otherDoc.
-				    if ( link.get(fromdoc) == null ) {
-				    	link.put(fromdoc, new Hashtable<Integer,Boolean>());
-				    }
-				    if ( link.get(fromdoc).get(otherDoc) == null ) {
-						link.get(fromdoc).put( otherDoc, true );
-						out[fromdoc]++;
-				    }
-				}
-		    }
-		    if ( fileIndex >= MAX_NUMBER_OF_DOCS ) {
-		    	System.err.print( "stopped reading since documents table is full. " );
-		    }
-		    else {
-		    	System.err.print( "done. " );
-		    }
-		    // Compute the number of sinks.
-		    for ( int i=0; i<fileIndex; i++ ) {
-				if ( out[i] == 0 )
-				    numberOfSinks++;
-		    }
+		    LinkFile links = LinkFile.read( filename );
+		    docName = links.docName;
+		    graph = links.graph;
+		    numberOfSinks = graph.sinks.length;
+		    System.err.print( "done. " );
 		}
 		catch ( FileNotFoundException e ) {
 		    System.err.println( "File " + filename + " not found!" );
@@ -157,8 +128,8 @@ public class PageRank{
 		catch ( IOException e ) {
 		    System.err.println( "Error reading file " + filename );
 		}
-		System.err.println( "Read " + fileIndex + " number of documents" );
-		return fileIndex;
+		System.err.println( "Read " + docName.length + " number of documents" );
+		return docName.length;
     }
     
     double diffOfArray(double[] foo, double[] bar) {
@@ -188,118 +159,6 @@ public class PageRank{
     	// print the result.
     }
     
-    double[] monteCarlo(int numberOfDocs, int numWalks, int method) {
-    	double[] bar = new double[numberOfDocs];
-    	// the probability vector.
-    	Random hoge = new Random();
-    	boolean isDangling = false;
-    	// for mc method 4.
-    	
-    	if (method == 1) {
-    		// random start, N = numWalks.
-	    	for (int i = 0; i < numWalks; i++) {
-	    		int initPage = hoge.nextInt(numberOfDocs);
-	    		LinkedList<Integer> list = randomWalk(numberOfDocs, initPage, isDangling);
-	    		bar[list.removeLast().intValue()]++;
-	    	}
-	    	for (int i = 0; i < numberOfDocs; i++) {
-	    		bar[i] = bar[i] / (double)numWalks;
-	    	}
-    	} else if (method == 2) {
-    		// cyclic start, N = numberOfDocs * numWalks.
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			for (int j = 0; j < numWalks; j++) {
-    				LinkedList<Integer> list = randomWalk(numberOfDocs, i, isDangling);
-    				bar[list.removeLast().intValue()]++;
-    			}
-    		}
-    		for (int i = 0; i < numberOfDocs; i++) {
-	    		bar[i] = bar[i] / (double) (numWalks * numberOfDocs);
-	    	}
-    	} else if (method == 3) {
-    		// complete path, N = numberOfDocs * numWalks.
-    		int length = 0;
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			for (int j = 0; j < numWalks; j++) {
-    				LinkedList<Integer> list = randomWalk(numberOfDocs, i, isDangling);
-    	    		length += list.size();
-    	    		while (list.size() != 0) {
-    	    			bar[list.removeLast().intValue()]++;
-    	    		}
-    			} // for 2
-    		} // for 1
-    		
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			bar[i] = bar[i] / (double)length;
-    		}
-    	} else if (method == 4) {
-    		// complete path (sadn), N = numberOfDocs * numWalks.
-    		isDangling = true;
-    		int length = 0;
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			for (int j = 0; j < numWalks; j++) {
-    				LinkedList<Integer> list = randomWalk(numberOfDocs, i, isDangling);
-    				length += list.size();
-    				while (list.size() != 0) {
-    					bar[list.removeLast().intValue()]++;
-    				}
-    			} // for 2
-    		} // for 1
-    		
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			bar[i] = bar[i] / (double)length;
-    		}
-    	} else if (method == 5) {
-    		// complete path (sadn, rs), N = numWalks.
-    		isDangling = true;
-    		int length = 0;
-    		for (int i = 0; i < numWalks; i++) {
-    			int initPage = hoge.nextInt(numberOfDocs);
-    			LinkedList<Integer> list = randomWalk(numberOfDocs, initPage, isDangling);
-    			length += list.size();
-    			while (list.size() != 0) {
-    				bar[list.removeLast().intValue()]++;
-    			}
-    		} // for
-    		
-    		for (int i = 0; i < numberOfDocs; i++) {
-    			bar[i] = bar[i] / (double)length;
-    		}
-    	}
-    	
-    	return bar;
-    }
-    
-    private LinkedList<Integer> randomWalk(int numberOfDocs, int initPage, boolean isDangling) {
-    	// return the end page using monte-carlo method.
-    	Random hoge = new Random();
-    	int page = initPage;
-    	LinkedList<Integer> list = new LinkedList<Integer>();
-    	list.add(page);
-    	
-    	while (true) {
-    		// start a new walk.
-    		if (hoge.nextDouble() < BORED) {
-    			break;
-    		} else {    			
-				Hashtable<Integer, Boolean> table = link.get(page);
-				if (table == null) {
-					if (isDangling) {
-						break;
-					} // in method 4, no dangling pages are allowed.
-					page = hoge.nextInt(numberOfDocs);
-		 		} else {
-					ArrayList<Integer> listFoo = new ArrayList<Integer>(table.keySet());
-					page = listFoo.get(hoge.nextInt(table.size())).intValue();
-				}
-				
-				list.add(page);				
-    		}
-    	} // while
-    	
-    	return list;
-    }
-
     /* --------------------------------------------- */
 
 
@@ -308,55 +167,41 @@ public class PageRank{
      */
     void computePagerank(int numberOfDocs, String str) {
     	int method = Integer.parseInt(str);
-    	double[] foo = new double[numberOfDocs];
     	double[] bar = new double[numberOfDocs];
     	
     	long dateFoo = new Date().getTime();
     	if (method == 0 || method == 6) {
-    		// power iteration method.
-	    	bar[0] = 1.0;
-	    	// and bar an initial state, say (1,0,...,0)
-	    	int iteration = 0;
-	    	while (diffOfArray(foo, bar) >= EPSILON && iteration <= MAX_NUMBER_OF_ITERATIONS) {
-	    		foo = bar;
-	    		//bar = computeProbabilityVector(link, foo);
-	    		int length = foo.length;
-	        	
-	        	for (int i = 0; i < length; i++) {
-	        		bar[i] = BORED / length;
-	        		for (int j = 0; j < length; j++) {
-	        			Hashtable<Integer, Boolean> outlinks = link.get(j);
-	        			if (outlinks == null) {
-	        				bar[i] += foo[j] * (1 - BORED) / length;
-	        			} else {
-	        				if (outlinks.get(i) != null) {
-	        					bar[i] += foo[j] * (1 - BORED) / outlinks.size();
-	        				} // if
-	        			}
-	        		} // for 2
-	        	} // for 1
-	    		iteration++;
-	    	}
+    		// power iteration method, O(links) per iteration.
+    		PowerIteration engine = new PowerIteration(graph, BORED, EPSILON, MAX_NUMBER_OF_ITERATIONS, numThreads);
+    		bar = engine.compute();
+    		System.err.println("iterations: " + engine.getIterations() + ", residual: " + engine.getResidual());
+    		try {
+    			Incremental.writeRanks(new File(linkFile + Incremental.RANK_SUFFIX), docName, bar);
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    		// the start of the next incremental update.
+    	} else if (method == 7) {
+    		// in-place sweeps, in one thread.
+    		GaussSeidel engine = new GaussSeidel(graph, BORED, EPSILON, MAX_NUMBER_OF_ITERATIONS);
+    		bar = engine.compute();
+    		System.err.println("iterations: " + engine.getIterations() + ", residual: " + engine.getResidual());
+    	} else if (method == 8) {
+    		PowerIteration engine = new PowerIteration(graph, BORED, EPSILON, MAX_NUMBER_OF_ITERATIONS, numThreads, EXTRAPOLATION_PERIOD);
+    		bar = engine.compute();
+    		System.err.println("iterations: " + engine.getIterations() + ", residual: " + engine.getResidual());
     	} else {
-    		bar = monteCarlo(numberOfDocs, 50, method);
+    		MonteCarlo engine = new MonteCarlo(graph, BORED, numThreads, System.nanoTime());
+    		bar = engine.compute(method, 50);
     		// 5 monte-carlo methods.
     	}
     		
     	if (method == 6) {
-    		// write to file.
-    		File file = new File("" + "./pagerank.score");
-    		if (!file.exists()) {
-    			try {
-    				file.createNewFile();
-    				FileWriter fw = new FileWriter(file, true);
-    				for (int i = 0; i < bar.length; i++) {
-    					fw.append("" + docName[i] + " " + bar[i]);
-    					fw.append(System.lineSeparator());
-    				}
-    				fw.close();
-    			} catch (IOException e) {
-    				e.printStackTrace();
-    			}
+    		// export by docID of the search index, replacing the old file.
+    		try {
+    			export.export(bar, docName);
+    		} catch (IOException e) {
+    			e.printStackTrace();
     		}
     	}
     	if (method != 6) {
@@ -376,8 +221,18 @@ public class PageRank{
 		    System.err.println( "Please give the name of the link file" );
 		} else if (args.length < 2) {
 			System.err.println("Please give the rank method");
-		} else {
+		} else if (args.length < 3) {
 		    new PageRank(args[0], args[1]);
+		} else if (args.length < 4) {
+		    new PageRank(args[0], args[1], Integer.parseInt(args[2]));
+		} else {
+		    // the documents of the index, the score file and the titles. without
+		    // the documents (./index/documents by default) the scores are
+		    // written as "name score" text.
+		    ScoreExport export = new ScoreExport(new File(args[3]),
+		    		new File(args.length > 4 ? args[4] : ir.PageRankScores.SCORE_FILE),
+		    		args.length > 5 ? new File(args[5]) : null);
+		    new PageRank(args[0], args[1], Integer.parseInt(args[2]), export);
 		}
     }
 }
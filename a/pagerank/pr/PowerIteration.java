@@ -0,0 +1,317 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the power iteration over the sparse link graph.
+ */
+
+package pr;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ *   Computes PageRank by power iteration over a LinkGraph, in O(links)
+ *   per iteration. The rank of document i is pulled from its inlinks:
+ *
+ *      bar[i] = (BORED + (1 - BORED) * dangling) / N
+ *             + (1 - BORED) * sum of foo[j] / out(j) over j linking to i
+ *
+ *   where dangling is the rank of the documents with no outlinks, which
+ *   is spread over all the documents. The dangling rank is one number
+ *   per iteration, so the sinks need no links of their own. foo and bar
+ *   are swapped after each iteration, and the iteration stops when the
+ *   L1 distance between them is below epsilon.<p>
+ *
+ *   The documents are split in chunks of CHUNK_SIZE, which can be run
+ *   by the threads of a ForkJoinPool. Each chunk writes its part of the
+ *   dangling rank and of the distance to its own slot, and the slots
+ *   are summed in chunk order, so the result does not depend on the
+ *   number of threads.<p>
+ *
+ *   With an extrapolation period, every period iterations the next
+ *   vector is estimated from the last four by quadratic extrapolation
+ *   (Kamvar et al., 2003), which removes the error along the second and
+ *   third eigenvectors, where the power iteration converges slowest.<p>
+ *
+ *   With a teleport vector (see setTeleport()) the random jumps go to
+ *   the documents in proportion to it instead of uniformly, which gives
+ *   a personalized, or topic sensitive, PageRank. The rank of the sinks
+ *   is still spread uniformly, so the PageRank is linear in teleport:
+ *   the PageRank of a blend of teleport vectors is the same blend of
+ *   their PageRanks.
+ */
+public class PowerIteration {
+
+    private LinkGraph graph;
+    private double bored;
+    private double epsilon;
+    private int maxIterations;
+    private int numThreads;
+    private int extrapolation;
+
+    /** Where the random jumps go, or null for uniformly. */
+    private double[] teleport = null;
+
+    /** The number of documents in a chunk, the unit of work of a thread. */
+    static final int CHUNK_SIZE = 4096;
+
+    /** The two passes of an iteration, see step(). */
+    private static final int SHARE = 0;
+    private static final int PULL = 1;
+
+    /** The vectors of the current iteration, see step(). */
+    private double[] foo;
+    private double[] bar;
+    private double[] share;
+    private double base;
+
+    /** The partial sums of the chunks. */
+    private double[] partial;
+
+    /** The number of iterations and the last L1 distance of compute(). */
+    private int iterations = 0;
+    private double residual = Double.POSITIVE_INFINITY;
+
+    public PowerIteration(LinkGraph graph, double bored, double epsilon, int maxIterations) {
+    	this(graph, bored, epsilon, maxIterations, 1);
+    }
+
+    /**
+     *  Creates an engine running the chunks on numThreads threads, or
+     *  in the calling thread if numThreads is 1.
+     */
+    public PowerIteration(LinkGraph graph, double bored, double epsilon, int maxIterations, int numThreads) {
+    	this(graph, bored, epsilon, maxIterations, numThreads, 0);
+    }
+
+    /**
+     *  Creates an engine extrapolating every extrapolation iterations,
+     *  or never if extrapolation is 0.
+     */
+    public PowerIteration(LinkGraph graph, double bored, double epsilon, int maxIterations, int numThreads, int extrapolation) {
+    	this.graph = graph;
+    	this.bored = bored;
+    	this.epsilon = epsilon;
+    	this.maxIterations = maxIterations;
+    	this.numThreads = numThreads;
+    	this.extrapolation = extrapolation;
+    }
+
+    /**
+     *  Makes the random jumps go to document i with probability
+     *  teleport[i], which must sum to 1, or uniformly if null.
+     */
+    public void setTeleport(double[] teleport) {
+    	this.teleport = teleport;
+    }
+
+    /**
+     *  Iterates from the uniform distribution until convergence, or at
+     *  most maxIterations times.
+     *
+     *  @return the rank of each document, summing to 1.
+     */
+    public double[] compute() {
+    	double[] start = new double[graph.numberOfDocs];
+    	Arrays.fill(start, 1.0 / graph.numberOfDocs);
+    	return compute(start);
+    }
+
+    /**
+     *  Iterates from start, which is overwritten, until convergence, or
+     *  at most maxIterations times. Starting from the ranks of a graph
+     *  close to this one, as after a small change of the links, takes
+     *  a few iterations instead of a whole run.
+     *
+     *  @return the rank of each document, summing to 1.
+     */
+    public double[] compute(double[] start) {
+    	int n = graph.numberOfDocs;
+    	foo = start;
+    	bar = new double[n];
+    	share = new double[n];
+    	// the rank each document gives to each of its outlinks.
+    	partial = new double[(n + CHUNK_SIZE - 1) / CHUNK_SIZE];
+    	ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+    	iterations = 0;
+    	residual = Double.POSITIVE_INFINITY;
+    	double[][] history = extrapolation > 0 ? new double[3][n] : null;
+    	int recorded = 0;
+    	// the last three vectors, the oldest first, for the extrapolation.
+    	try {
+    		while (residual >= epsilon && iterations < maxIterations) {
+    			if (history != null) {
+    				double[] hoge = history[0];
+    				history[0] = history[1];
+    				history[1] = history[2];
+    				history[2] = hoge;
+    				System.arraycopy(foo, 0, hoge, 0, n);
+    				recorded = Math.min(recorded + 1, 3);
+    			}
+    			run(pool, SHARE);
+    			double dangling = sum(partial);
+    			base = teleport == null ? (bored + (1 - bored) * dangling) / n : (1 - bored) * dangling / n;
+    			// with teleport, the jumps are added in PULL.
+    			run(pool, PULL);
+    			residual = sum(partial);
+    			double[] hoge = foo;
+    			foo = bar;
+    			bar = hoge;
+    			// the new vector is foo, the old one is overwritten next.
+    			iterations++;
+    			if (recorded == 3 && iterations % extrapolation == 0 && residual >= epsilon) {
+    				extrapolate(history[0], history[1], history[2], foo);
+    				recorded = 0;
+    			}
+    		} // while
+    	} finally {
+    		if (pool != null) {
+    			pool.shutdown();
+    		}
+    	}
+    	double[] result = foo;
+    	foo = bar = share = partial = null;
+    	return result;
+    }
+
+    /**
+     *  Runs a pass over all the chunks, in pool if there is one.
+     */
+    private void run(ForkJoinPool pool, int pass) {
+    	if (pool == null) {
+    		for (int c = 0; c < partial.length; c++) {
+    			step(pass, c);
+    		}
+    	} else {
+    		pool.invoke(new Pass(pass, 0, partial.length));
+    	}
+    }
+
+    /**
+     *  Runs a pass over chunk c. SHARE computes the share of each
+     *  document and sums the rank of the sinks; PULL computes bar and
+     *  sums the distance to foo.
+     */
+    private void step(int pass, int c) {
+    	int from = c * CHUNK_SIZE;
+    	int to = Math.min(from + CHUNK_SIZE, graph.numberOfDocs);
+    	double sum = 0;
+    	if (pass == SHARE) {
+    		for (int j = from; j < to; j++) {
+    			int out = graph.outDegree(j);
+    			if (out == 0) {
+    				share[j] = 0;
+    				sum += foo[j];
+    			} else {
+    				share[j] = foo[j] / out;
+    			}
+    		}
+    	} else {
+    		for (int i = from; i < to; i++) {
+    			double pulled = 0;
+    			for (int p = graph.inOffsets[i]; p < graph.inOffsets[i + 1]; p++) {
+    				pulled += share[graph.inLinks[p]];
+    			}
+    			bar[i] = (teleport == null ? base : base + bored * teleport[i]) + (1 - bored) * pulled;
+    			sum += Math.abs(bar[i] - foo[i]);
+    		} // for
+    	}
+    	partial[c] = sum;
+    }
+
+    /**
+     *  Replaces x3 by the quadratic extrapolation of four successive
+     *  vectors x0 to x3: with yj = xj - x0, the coefficients g1 and g2
+     *  minimizing |g1 y1 + g2 y2 + y3| give the estimate
+     *
+     *      (g1 + g2 + 1) x1 + (g2 + 1) x2 + x3
+     *
+     *  scaled to sum to 1. Nothing is done if y1 and y2 are (almost)
+     *  parallel.
+     */
+    static void extrapolate(double[] x0, double[] x1, double[] x2, double[] x3) {
+    	double a11 = 0, a12 = 0, a22 = 0, b1 = 0, b2 = 0;
+    	for (int i = 0; i < x0.length; i++) {
+    		double y1 = x1[i] - x0[i];
+    		double y2 = x2[i] - x0[i];
+    		double y3 = x3[i] - x0[i];
+    		a11 += y1 * y1;
+    		a12 += y1 * y2;
+    		a22 += y2 * y2;
+    		b1 += y1 * y3;
+    		b2 += y2 * y3;
+    	}
+    	double det = a11 * a22 - a12 * a12;
+    	if (!(det > 1e-12 * a11 * a22)) {
+    		return;
+    	}
+    	// the least squares solution of the normal equations.
+    	double g1 = (a12 * b2 - a22 * b1) / det;
+    	double g2 = (a12 * b1 - a11 * b2) / det;
+    	double sum = 0;
+    	for (int i = 0; i < x0.length; i++) {
+    		x3[i] = Math.max(0, (g1 + g2 + 1) * x1[i] + (g2 + 1) * x2[i] + x3[i]);
+    		sum += x3[i];
+    	}
+    	for (int i = 0; i < x0.length; i++) {
+    		x3[i] /= sum;
+    	}
+    }
+
+    /**
+     *  Sums the partial sums in chunk order.
+     */
+    private static double sum(double[] partial) {
+    	double sum = 0;
+    	for (double foo : partial) {
+    		sum += foo;
+    	}
+    	return sum;
+    }
+
+    /**
+     *   Runs a pass over the chunks lo to hi - 1, splitting them in
+     *   halves for the other threads to steal.
+     */
+    private class Pass extends RecursiveAction {
+
+    	private static final long serialVersionUID = 1L;
+
+    	private int pass;
+    	private int lo;
+    	private int hi;
+
+    	Pass(int pass, int lo, int hi) {
+    		this.pass = pass;
+    		this.lo = lo;
+    		this.hi = hi;
+    	}
+
+    	protected void compute() {
+    		if (hi - lo <= 1) {
+    			for (int c = lo; c < hi; c++) {
+    				step(pass, c);
+    			}
+    		} else {
+    			int mid = (lo + hi) >>> 1;
+    			invokeAll(new Pass(pass, lo, mid), new Pass(pass, mid, hi));
+    		}
+    	}
+    }
+
+    public int getIterations() {
+    	return iterations;
+    }
+
+    public double getResidual() {
+    	return residual;
+    }
+
+}
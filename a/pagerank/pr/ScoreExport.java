@@ -0,0 +1,202 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the export of the pagerank to the search engine.
+ */
+
+package pr;
+
+import ir.DiskIndex;
+import ir.DocumentStore;
+import ir.PageRankScores;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+
+/**
+ *   Writes the PageRank of the documents of the search index, as a
+ *   float per docID of the index (see ir.PageRankScores).<p>
+ *
+ *   The documents of the link file are matched with the documents of
+ *   the index by name: the name of a document in the index is its file
+ *   name without the extension, and the name of a document in the link
+ *   file is its title, or the title given to it in a titles file with
+ *   "name;title" lines. The documents of the index with no match get
+ *   0.<p>
+ *
+ *   When there are no documents of an index, the scores are written as
+ *   text, a "name score" line per document of the link file, which
+ *   ir.PageRankScores reads with the names as docIDs.<p>
+ *
+ *   The file is written to a temporary file which is then moved over
+ *   the old one, so the search engine never reads half a file.
+ */
+public class ScoreExport {
+
+    /** The documents of the search index, see ir.DocumentStore. */
+    private File documents;
+
+    /** The score file read by the search engine. */
+    private File scores;
+
+    /** The titles of the documents of the link file, or null. */
+    private File titles;
+
+    /**
+     *  Exports to the default files of the search engine, which is run
+     *  from the same directory.
+     */
+    public ScoreExport() {
+    	this(new File(DiskIndex.INDEX_DIR, DocumentStore.DOCUMENTS_FILE), new File(PageRankScores.SCORE_FILE), null);
+    }
+
+    public ScoreExport(File documents, File scores, File titles) {
+    	this.documents = documents;
+    	this.scores = scores;
+    	this.titles = titles;
+    }
+
+    /**
+     *  Writes rank, the rank of each document of the link file, in the
+     *  order of the docIDs of the index.
+     */
+    public void export(double[] rank, String[] docName) throws IOException {
+    	HashMap<String, String> title = titles == null ? null : readTitles(titles);
+    	HashMap<String, Integer> docNumber = new HashMap<String, Integer>();
+    	for (int i = 0; i < docName.length; i++) {
+    		String name = title == null ? docName[i] : title.get(docName[i]);
+    		if (name != null) {
+    			docNumber.put(name, i);
+    		}
+    	}
+    	// the number in the link file of each name.
+
+    	if (!documents.isFile()) {
+    		writeText(rank, docName, scores);
+    		System.err.println("No documents in " + documents + ", exported the pagerank by name to " + scores);
+    		return;
+    	}
+    	DocumentStore store = DocumentStore.open(documents);
+    	float[] aligned = new float[store.size()];
+    	int matched = 0;
+    	for (int docID = 0; docID < store.size(); docID++) {
+    		Integer i = docNumber.get(name(store.getPath(docID)));
+    		if (i != null) {
+    			aligned[docID] = (float) rank[i];
+    			matched++;
+    		}
+    	}
+    	write(aligned, scores);
+    	System.err.println("Exported the pagerank of " + matched + " of " + store.size() + " documents to " + scores);
+    }
+
+    /**
+     *  Returns the name of the document at path, its file name without
+     *  the extension.
+     */
+    static String name(String path) {
+    	String name = new File(path).getName();
+    	int dot = name.lastIndexOf('.');
+    	return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     *  Reads the "name;title" lines of file.
+     */
+    static HashMap<String, String> readTitles(File file) throws IOException {
+    	HashMap<String, String> title = new HashMap<String, String>();
+    	BufferedReader in = new BufferedReader(new FileReader(file));
+    	try {
+    		String line;
+    		while ((line = in.readLine()) != null) {
+    			int index = line.indexOf(';');
+    			if (index > 0) {
+    				title.put(line.substring(0, index), line.substring(index + 1));
+    			}
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	return title;
+    }
+
+    /**
+     *  Writes the scores to file in the format of ir.PageRankScores: the
+     *  magic number, the number of scores, and the scores as floats.
+     *  The old file is replaced atomically.
+     */
+    static void write(float[] score, File file) throws IOException {
+    	File tmp = createTempFile(file);
+    	try {
+    		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+    				new FileOutputStream(tmp)));
+    		try {
+    			out.writeInt(PageRankScores.MAGIC);
+    			out.writeInt(score.length);
+    			for (float foo : score) {
+    				out.writeFloat(foo);
+    			}
+    		} finally {
+    			out.close();
+    		}
+    		Files.move(tmp.toPath(), file.toPath(),
+    				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    	} finally {
+    		tmp.delete();
+    	}
+    	// the temporary file is gone after the move, or removed if it failed.
+    }
+
+    /**
+     *  Writes the rank of each document as a "name score" line, the text
+     *  format of ir.PageRankScores. The old file is replaced atomically.
+     */
+    static void writeText(double[] rank, String[] docName, File file) throws IOException {
+    	File tmp = createTempFile(file);
+    	try {
+    		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+    		try {
+    			for (int i = 0; i < rank.length; i++) {
+    				out.println(docName[i] + " " + rank[i]);
+    			}
+    		} finally {
+    			out.close();
+    		}
+    		if (out.checkError()) {
+    			throw new IOException("Cannot write " + tmp);
+    		}
+    		Files.move(tmp.toPath(), file.toPath(),
+    				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    	} finally {
+    		tmp.delete();
+    	}
+    }
+
+    /**
+     *  Creates a temporary file in the directory of file, so that it can
+     *  be moved over file atomically.
+     */
+    private static File createTempFile(File file) throws IOException {
+    	File dir = file.getAbsoluteFile().getParentFile();
+    	dir.mkdirs();
+    	return File.createTempFile(file.getName(), ".tmp", dir);
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Johan Boye, 2012
+ */
+
+/*
+ * the topic sensitive pageranks, computed once for the search engine.
+ */
+
+package pr;
+
+import ir.DiskIndex;
+import ir.DocumentStore;
+import ir.TopicScores;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+
+
+/**
+ *   Computes a topic sensitive PageRank for each topic of a topics
+ *   file, with a line "topic;seed1,seed2,..." per topic, where the
+ *   seeds are titles of the link file. The random jumps of the PageRank
+ *   of a topic go to its seeds only.<p>
+ *
+ *   Each PageRank is exported as a score file of the search engine
+ *   named after the topic (see ir.TopicScores), which blends them by
+ *   the topic weights of a query without running PageRank again.
+ */
+public class TopicRank {
+
+    /**
+     *  Computes the PageRank of each topic of topicsFile over the links
+     *  of filename, and exports it to dir.
+     */
+    public static void compute(String filename, File topicsFile, int numThreads, File documents, File dir, File titles) throws IOException {
+    	LinkFile links = LinkFile.read(filename);
+    	int n = links.graph.numberOfDocs;
+    	HashMap<String, Integer> docNumber = new HashMap<String, Integer>();
+    	for (int i = 0; i < n; i++) {
+    		docNumber.put(links.docName[i], i);
+    	}
+
+    	BufferedReader in = new BufferedReader(new FileReader(topicsFile));
+    	try {
+    		String line;
+    		while ((line = in.readLine()) != null) {
+    			int index = line.indexOf(';');
+    			if (index <= 0) {
+    				continue;
+    			}
+    			String topic = line.substring(0, index);
+    			double[] teleport = new double[n];
+    			int numberOfSeeds = 0;
+    			for (String seed : line.substring(index + 1).split(",")) {
+    				Integer i = docNumber.get(seed);
+    				if (i != null && teleport[i] == 0) {
+    					teleport[i] = 1;
+    					numberOfSeeds++;
+    				}
+    			}
+    			if (numberOfSeeds == 0) {
+    				System.err.println("Topic " + topic + " has no seed in " + filename + ", skipped");
+    				continue;
+    			}
+    			for (int i = 0; i < n; i++) {
+    				teleport[i] /= numberOfSeeds;
+    			}
+    			// the jumps go to the seeds uniformly.
+
+    			PowerIteration engine = new PowerIteration(links.graph, PageRank.BORED,
+    					PageRank.EPSILON, PageRank.MAX_NUMBER_OF_ITERATIONS, numThreads);
+    			engine.setTeleport(teleport);
+    			double[] rank = engine.compute();
+    			System.err.println("topic " + topic + ": " + numberOfSeeds + " seeds, iterations: "
+    					+ engine.getIterations() + ", residual: " + engine.getResidual());
+    			new ScoreExport(documents, new File(dir, topic + TopicScores.SUFFIX), titles)
+    					.export(rank, links.docName);
+    		} // while
+    	} finally {
+    		in.close();
+    	}
+    }
+
+    public static void main(String[] args) throws IOException {
+    	if (args.length < 2) {
+    		System.err.println("Please give the name of the link file and of the topics file");
+    		return;
+    	}
+    	long dateFoo = System.currentTimeMillis();
+    	int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    	File documents = new File(args.length > 3 ? args[3] : DiskIndex.INDEX_DIR + File.separator + DocumentStore.DOCUMENTS_FILE);
+    	File dir = new File(args.length > 4 ? args[4] : TopicScores.TOPIC_DIR);
+    	File titles = args.length > 5 ? new File(args[5]) : null;
+    	compute(args[0], new File(args[1]), numThreads, documents, dir, titles);
+    	System.err.println("time elapsed: " + (System.currentTimeMillis() - dateFoo) + " ms");
+    }
+
+}